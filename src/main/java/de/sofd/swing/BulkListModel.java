@@ -0,0 +1,35 @@
+package de.sofd.swing;
+
+import javax.swing.ListModel;
+
+/**
+ * Optional extension of {@link ListModel} for models whose
+ * {@link ListModel#getElementAt(int) getElementAt} is expensive (e.g. because
+ * every call results in a database query), but which can fetch a contiguous
+ * range of elements in one go much more cheaply.
+ * <p>
+ * {@link JGridList} checks whether its model implements this interface and, if
+ * it does, loads all the elements of its currently displayed window with a
+ * single {@link #getElements(int, int, Object[]) getElements} call. The
+ * fetched elements are cached by the JGridList until the next
+ * {@link javax.swing.event.ListDataEvent} is received from the model.
+ */
+public interface BulkListModel extends ListModel {
+
+    /**
+     * Fetch the elements in the index range [fromIndex, toIndex) into dest.
+     * After the call, dest[i] must contain the element at index fromIndex + i
+     * for all 0 &lt;= i &lt; toIndex - fromIndex. The result must be the
+     * same as calling {@link #getElementAt(int)} for each index in turn.
+     *
+     * @param fromIndex
+     *            start index (inclusive), 0 &lt;= fromIndex &lt;= toIndex
+     * @param toIndex
+     *            end index (exclusive), toIndex &lt;= {@link #getSize()}
+     * @param dest
+     *            destination array; must have a length of at least
+     *            toIndex - fromIndex
+     */
+    void getElements(int fromIndex, int toIndex, Object[] dest);
+
+}
@@ -0,0 +1,131 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Handle representing the binding of a {@link JGridList} cell to one model
+ * item. A new binding is created whenever the list (re-)creates a cell's
+ * component for a model item, and it becomes invalid as soon as the cell is
+ * recycled for a different item or deleted.
+ * <p>
+ * Component factories that produce cell content asynchronously and/or
+ * progressively (e.g. a coarse preview first, followed by one or more
+ * refinements) obtain the binding in
+ * {@link GridListComponentFactory#createComponent(JGridList, JPanel, Object)
+ * createComponent} via {@link JGridList#getCellBinding(JPanel)}, and deliver
+ * each version of the content through {@link #publish(Runnable)}. Updates of
+ * a binding that has become invalid in the meantime are dropped, and
+ * background jobs registered via {@link #cancelOnUnbind(Future)} are
+ * cancelled when the binding becomes invalid, so abandoned work for recycled
+ * cells doesn't pile up.
+ */
+public final class CellBinding {
+
+    private final JPanel cellContainer;
+    private final Object modelItem;
+    private volatile boolean valid = true;
+    private List<Future<?>> futures;
+
+    CellBinding(JPanel cellContainer, Object modelItem) {
+        this.cellContainer = cellContainer;
+        this.modelItem = modelItem;
+    }
+
+    /**
+     *
+     * @return the model item the cell was bound to
+     */
+    public Object getModelItem() {
+        return modelItem;
+    }
+
+    /**
+     *
+     * @return whether the cell is still bound to {@link #getModelItem()}.
+     *         May be called from any thread
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Deliver new content for the cell. May be called from any thread.
+     * update is run on the EDT (immediately if this is called on the EDT,
+     * otherwise batched with other updates by the default
+     * {@link EdtBatchDispatcher}), provided the binding is still valid by
+     * then, and the cell is repainted afterwards. Other cells aren't
+     * affected.
+     *
+     * @param update
+     *            code that applies the new content to the cell's component
+     */
+    public void publish(final Runnable update) {
+        if (!valid) {
+            return;
+        }
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                if (valid) {
+                    update.run();
+                    cellContainer.repaint();
+                }
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            r.run();
+        } else {
+            EdtBatchDispatcher.getDefault().dispatch(r);
+        }
+    }
+
+    /**
+     * Register a background job producing content for this binding, to be
+     * cancelled when the binding becomes invalid. If it already is invalid,
+     * the job is cancelled immediately. Jobs are cancelled without
+     * interrupting them, so running jobs should check {@link #isValid()}
+     * between their steps.
+     *
+     * @param future
+     */
+    public void cancelOnUnbind(Future<?> future) {
+        synchronized (this) {
+            if (valid) {
+                if (futures == null) {
+                    futures = new ArrayList<Future<?>>(2);
+                } else {
+                    // a long-lived binding may register many jobs over time
+                    for (Iterator<Future<?>> it = futures.iterator(); it.hasNext();) {
+                        if (it.next().isDone()) {
+                            it.remove();
+                        }
+                    }
+                }
+                futures.add(future);
+                return;
+            }
+        }
+        future.cancel(false);
+    }
+
+    void invalidate() {
+        List<Future<?>> toCancel;
+        synchronized (this) {
+            valid = false;
+            toCancel = futures;
+            futures = null;
+        }
+        if (toCancel != null) {
+            for (Future<?> f : toCancel) {
+                f.cancel(false);
+            }
+        }
+    }
+
+}
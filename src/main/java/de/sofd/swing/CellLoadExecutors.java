@@ -0,0 +1,93 @@
+package de.sofd.swing;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for the executors that {@link GridListComponentFactory
+ * GridListComponentFactories} load cell content on.
+ * <p>
+ * Loading content usually consists of blocking I/O (reading files or
+ * database rows), which is best done on many threads, and CPU-bound work
+ * (decoding), which shouldn't use more threads than there are cores. So
+ * loaders should do the I/O on an {@link #newIoExecutor(String) I/O executor}
+ * and hand the CPU-bound part to a {@link #newCpuExecutor(String) CPU
+ * executor}. On Java 21 and later, the I/O executor runs each job on its own
+ * virtual thread, so no thread count needs to be tuned; on older Java
+ * versions, it falls back to an unbounded pool of daemon threads.
+ */
+public class CellLoadExecutors {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method m = null;
+        try {
+            m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            // Java < 21
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = m;
+    }
+
+    private CellLoadExecutors() {
+    }
+
+    /**
+     *
+     * @return whether {@link #newIoExecutor(String)} uses virtual threads
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Create an executor for blocking I/O. Starts a new virtual thread per
+     * job on Java 21+, otherwise uses a cached pool of daemon threads.
+     *
+     * @param name
+     *            thread name prefix (only used for platform threads)
+     * @return the executor
+     */
+    public static ExecutorService newIoExecutor(String name) {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                // fall back to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(newDaemonThreadFactory(name + " I/O", Thread.NORM_PRIORITY));
+    }
+
+    /**
+     * Create an executor for CPU-bound work, with one thread per core (less
+     * one for the EDT, if there are several cores).
+     *
+     * @param name
+     *            thread name prefix
+     * @return the executor
+     */
+    public static ExecutorService newCpuExecutor(String name) {
+        return Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                newDaemonThreadFactory(name + " CPU", Thread.NORM_PRIORITY - 1));
+    }
+
+    private static ThreadFactory newDaemonThreadFactory(final String name, final int priority) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + " " + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(priority);
+                return t;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,507 @@
+package de.sofd.swing;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+
+/**
+ * Thread-safe {@link javax.swing.ListModel} that may be modified from any
+ * thread. Intended for lists that are filled by background (acquisition,
+ * import etc.) threads while being displayed in a {@link JGridList} or
+ * JList.
+ * <p>
+ * The contents are kept in an immutable, copy-on-write segmented array
+ * ("snapshot"). Modifications replace only the affected segments, so writers
+ * don't copy the whole list, and readers never need a lock: {@link #snapshot()}
+ * returns a consistent, immutable view of the current contents that may be
+ * read from any thread.
+ * <p>
+ * Writers don't block on the EDT. Their modifications are recorded and
+ * delivered to the {@link javax.swing.event.ListDataListener
+ * ListDataListeners} in batches on the EDT, with adjacent modifications of the
+ * same kind merged into one {@link ListDataEvent}. The {@link #getSize()},
+ * {@link #getElementAt(int)} and {@link #getElements(int, int, Object[])}
+ * methods, which are meant to be called by the listeners on the EDT,
+ * always reflect the state as of the last delivered event, so the listeners
+ * see a consistent sequence of model states. Modifications made on the EDT
+ * itself are delivered immediately, as in
+ * {@link javax.swing.DefaultListModel}.
+ */
+public class ConcurrentListModel extends AbstractListModel implements BulkListModel {
+
+    private static final int MAX_CHUNK_SIZE = 512;
+    private static final int MIN_CHUNK_SIZE = MAX_CHUNK_SIZE / 4;
+
+    /**
+     * Number of pending undelivered changes above which they're delivered as
+     * one event for the change in size plus one contentsChanged event for
+     * the rest of the list rather than one by one.
+     */
+    private static final int MAX_PENDING_CHANGES = 256;
+
+    private final Object writeLock = new Object();
+
+    /**
+     * latest state, including undelivered changes
+     */
+    private volatile Snapshot current = Snapshot.EMPTY;
+
+    /**
+     * state as of the last delivered event
+     */
+    private volatile Snapshot published = Snapshot.EMPTY;
+
+    // guarded by writeLock
+    private final List<PendingChange> pendingChanges = new ArrayList<PendingChange>();
+    private Snapshot pendingBase = null;  // state before the first pending change
+    private boolean flushScheduled = false;
+
+    // EDT only
+    private boolean flushing = false;
+
+    public ConcurrentListModel() {
+    }
+
+    public ConcurrentListModel(Collection<?> initialContents) {
+        Snapshot s = Snapshot.EMPTY.insert(0, initialContents.toArray());
+        current = s;
+        published = s;
+    }
+
+    //// reading
+
+    @Override
+    public int getSize() {
+        return published.size();
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        return published.get(index);
+    }
+
+    @Override
+    public void getElements(int fromIndex, int toIndex, Object[] dest) {
+        published.copyTo(fromIndex, toIndex, dest);
+    }
+
+    /**
+     *
+     * @return immutable view of the current contents of the model, including
+     *         modifications that haven't been delivered to the listeners yet.
+     *         May be called from any thread.
+     */
+    public List<Object> snapshot() {
+        return current;
+    }
+
+    //// writing
+
+    public void add(Object element) {
+        synchronized (writeLock) {
+            insert(current.size(), new Object[] {element});
+        }
+        flushIfOnEdt();
+    }
+
+    public void add(int index, Object element) {
+        synchronized (writeLock) {
+            insert(index, new Object[] {element});
+        }
+        flushIfOnEdt();
+    }
+
+    public void addAll(Collection<?> elements) {
+        synchronized (writeLock) {
+            insert(current.size(), elements.toArray());
+        }
+        flushIfOnEdt();
+    }
+
+    public void addAll(int index, Collection<?> elements) {
+        synchronized (writeLock) {
+            insert(index, elements.toArray());
+        }
+        flushIfOnEdt();
+    }
+
+    public Object set(int index, Object element) {
+        Object result;
+        synchronized (writeLock) {
+            Snapshot s = current;
+            result = s.get(index);
+            record(ListDataEvent.CONTENTS_CHANGED, index, index, s.replace(index, element));
+        }
+        flushIfOnEdt();
+        return result;
+    }
+
+    public Object remove(int index) {
+        Object result;
+        synchronized (writeLock) {
+            result = current.get(index);
+            delete(index, index);
+        }
+        flushIfOnEdt();
+        return result;
+    }
+
+    /**
+     * Removes the elements at the indices in the range [fromIndex, toIndex]
+     * (inclusive, as in {@link javax.swing.DefaultListModel#removeRange(int, int)}).
+     *
+     * @param fromIndex
+     * @param toIndex
+     */
+    public void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException("fromIndex must be <= toIndex");
+        }
+        synchronized (writeLock) {
+            delete(fromIndex, toIndex);
+        }
+        flushIfOnEdt();
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            int size = current.size();
+            if (size > 0) {
+                delete(0, size - 1);
+            }
+        }
+        flushIfOnEdt();
+    }
+
+    // callers must hold writeLock
+    private void insert(int index, Object[] elements) {
+        Snapshot s = current;
+        if (index < 0 || index > s.size()) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        if (elements.length > 0) {
+            record(ListDataEvent.INTERVAL_ADDED, index, index + elements.length - 1, s.insert(index, elements));
+        }
+    }
+
+    // callers must hold writeLock
+    private void delete(int fromIndex, int toIndex) {
+        Snapshot s = current;
+        if (fromIndex < 0 || toIndex >= s.size()) {
+            throw new IndexOutOfBoundsException("" + fromIndex + ".." + toIndex);
+        }
+        record(ListDataEvent.INTERVAL_REMOVED, fromIndex, toIndex, s.remove(fromIndex, toIndex + 1));
+    }
+
+    //// change recording & delivery
+
+    private static class PendingChange {
+        final int type;
+        int index0, index1;
+        Snapshot after;
+
+        PendingChange(int type, int index0, int index1, Snapshot after) {
+            this.type = type;
+            this.index0 = index0;
+            this.index1 = index1;
+            this.after = after;
+        }
+
+        /**
+         * Try to merge a subsequent change into this one.
+         *
+         * @return true if successful
+         */
+        boolean merge(int type, int index0, int index1, Snapshot after) {
+            if (type != this.type) {
+                return false;
+            }
+            switch (type) {
+            case ListDataEvent.INTERVAL_ADDED:
+                // insertion within or directly adjacent to the added interval
+                if (index0 < this.index0 || index0 > this.index1 + 1) {
+                    return false;
+                }
+                this.index1 += index1 - index0 + 1;
+                break;
+            case ListDataEvent.INTERVAL_REMOVED:
+                // removal of an interval that contains or borders the hole
+                // left by the previous removal
+                if (this.index0 < index0 || this.index0 > index1 + 1) {
+                    return false;
+                }
+                this.index1 = index1 + (this.index1 - this.index0 + 1);
+                this.index0 = index0;
+                break;
+            default:
+                if (index0 > this.index1 + 1 || index1 < this.index0 - 1) {
+                    return false;
+                }
+                this.index0 = Math.min(this.index0, index0);
+                this.index1 = Math.max(this.index1, index1);
+            }
+            this.after = after;
+            return true;
+        }
+    }
+
+    // callers must hold writeLock
+    private void record(int type, int index0, int index1, Snapshot after) {
+        if (pendingChanges.isEmpty()) {
+            pendingBase = current;
+        }
+        current = after;
+        int n = pendingChanges.size();
+        if (n > 0 && pendingChanges.get(n - 1).merge(type, index0, index1, after)) {
+            return;
+        }
+        if (n >= MAX_PENDING_CHANGES) {
+            // too many scattered changes; deliver the change in size at the
+            // end of the list, followed by one contentsChanged event covering
+            // the remaining elements, instead
+            int oldSize = pendingBase.size(), newSize = after.size();
+            pendingChanges.clear();
+            if (newSize > oldSize) {
+                pendingChanges.add(new PendingChange(ListDataEvent.INTERVAL_ADDED, oldSize, newSize - 1, after));
+            } else if (newSize < oldSize) {
+                pendingChanges.add(new PendingChange(ListDataEvent.INTERVAL_REMOVED, newSize, oldSize - 1, after));
+            }
+            int commonSize = Math.min(oldSize, newSize);
+            if (commonSize > 0) {
+                pendingChanges.add(new PendingChange(ListDataEvent.CONTENTS_CHANGED, 0, commonSize - 1, after));
+            }
+        } else {
+            pendingChanges.add(new PendingChange(type, index0, index1, after));
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(flushRunnable);
+        }
+    }
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private void flushIfOnEdt() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            flush();
+        }
+    }
+
+    /**
+     * Deliver all pending changes to the listeners. EDT only.
+     * <p>
+     * Changes made by the listeners while the changes are being delivered
+     * are delivered afterwards, by the same call, so the listeners always
+     * see the changes in order.
+     */
+    private void flush() {
+        if (flushing) {
+            return;
+        }
+        flushing = true;
+        try {
+            while (true) {
+                List<PendingChange> changes;
+                synchronized (writeLock) {
+                    flushScheduled = false;
+                    if (pendingChanges.isEmpty()) {
+                        return;
+                    }
+                    changes = new ArrayList<PendingChange>(pendingChanges);
+                    pendingChanges.clear();
+                    pendingBase = null;
+                }
+                for (PendingChange c : changes) {
+                    published = c.after;
+                    if (c.index1 < c.index0) {
+                        continue;
+                    }
+                    switch (c.type) {
+                    case ListDataEvent.INTERVAL_ADDED:
+                        fireIntervalAdded(this, c.index0, c.index1);
+                        break;
+                    case ListDataEvent.INTERVAL_REMOVED:
+                        fireIntervalRemoved(this, c.index0, c.index1);
+                        break;
+                    default:
+                        fireContentsChanged(this, c.index0, c.index1);
+                    }
+                }
+            }
+        } finally {
+            flushing = false;
+        }
+    }
+
+    //// the segmented copy-on-write array
+
+    /**
+     * Immutable list of elements stored as an array of chunks of at most
+     * {@link ConcurrentListModel#MAX_CHUNK_SIZE} elements each. Modifications
+     * return a new Snapshot that shares all unaffected chunks with this one.
+     */
+    private static final class Snapshot extends AbstractList<Object> implements RandomAccess {
+
+        static final Snapshot EMPTY = new Snapshot(new Object[0][], new int[0], 0);
+
+        private final Object[][] chunks;
+        private final int[] chunkStarts;
+        private final int size;
+
+        private Snapshot(Object[][] chunks, int[] chunkStarts, int size) {
+            this.chunks = chunks;
+            this.chunkStarts = chunkStarts;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("" + index);
+            }
+            int c = chunkIndexOf(index);
+            return chunks[c][index - chunkStarts[c]];
+        }
+
+        void copyTo(int fromIndex, int toIndex, Object[] dest) {
+            if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("" + fromIndex + ".." + toIndex);
+            }
+            int i = fromIndex;
+            while (i < toIndex) {
+                int c = chunkIndexOf(i);
+                int off = i - chunkStarts[c];
+                int n = Math.min(chunks[c].length - off, toIndex - i);
+                System.arraycopy(chunks[c], off, dest, i - fromIndex, n);
+                i += n;
+            }
+        }
+
+        /**
+         *
+         * @param index
+         * @return index of the chunk containing index, which must be in [0,size)
+         */
+        private int chunkIndexOf(int index) {
+            int lo = 0, hi = chunks.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (chunkStarts[mid] <= index) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        Snapshot insert(int index, Object[] elements) {
+            if (elements.length == 0) {
+                return this;
+            }
+            if (chunks.length == 0) {
+                return replaceChunks(0, 0, split(elements));
+            }
+            int c, off;
+            if (index == size) {
+                c = chunks.length - 1;
+                off = chunks[c].length;
+            } else {
+                c = chunkIndexOf(index);
+                off = index - chunkStarts[c];
+            }
+            Object[] old = chunks[c];
+            Object[] merged = new Object[old.length + elements.length];
+            System.arraycopy(old, 0, merged, 0, off);
+            System.arraycopy(elements, 0, merged, off, elements.length);
+            System.arraycopy(old, off, merged, off + elements.length, old.length - off);
+            return replaceChunks(c, c + 1, split(merged));
+        }
+
+        /**
+         * Remove the elements in [fromIndex, toIndex).
+         */
+        Snapshot remove(int fromIndex, int toIndex) {
+            if (fromIndex == toIndex) {
+                return this;
+            }
+            int cf = chunkIndexOf(fromIndex);
+            int cl = chunkIndexOf(toIndex - 1);
+            int offF = fromIndex - chunkStarts[cf];
+            int offL = toIndex - chunkStarts[cl];
+            Object[] first = chunks[cf], last = chunks[cl];
+            int tailLength = last.length - offL;
+            int replacedEnd = cl + 1;
+            Object[] next = null;
+            if (offF + tailLength < MIN_CHUNK_SIZE && replacedEnd < chunks.length) {
+                // merge the remainder with the following chunk to keep chunks from degenerating
+                next = chunks[replacedEnd++];
+            }
+            Object[] merged = new Object[offF + tailLength + (next == null ? 0 : next.length)];
+            System.arraycopy(first, 0, merged, 0, offF);
+            System.arraycopy(last, offL, merged, offF, tailLength);
+            if (next != null) {
+                System.arraycopy(next, 0, merged, offF + tailLength, next.length);
+            }
+            return replaceChunks(cf, replacedEnd, split(merged));
+        }
+
+        Snapshot replace(int index, Object element) {
+            int c = chunkIndexOf(index);
+            Object[] chunk = chunks[c].clone();
+            chunk[index - chunkStarts[c]] = element;
+            return replaceChunks(c, c + 1, new Object[][] {chunk});
+        }
+
+        private Snapshot replaceChunks(int from, int to, Object[][] replacement) {
+            Object[][] newChunks = new Object[chunks.length - (to - from) + replacement.length][];
+            System.arraycopy(chunks, 0, newChunks, 0, from);
+            System.arraycopy(replacement, 0, newChunks, from, replacement.length);
+            System.arraycopy(chunks, to, newChunks, from + replacement.length, chunks.length - to);
+            int[] newStarts = new int[newChunks.length];
+            System.arraycopy(chunkStarts, 0, newStarts, 0, from);
+            int pos = (from == 0 ? 0 : chunkStarts[from - 1] + chunks[from - 1].length);
+            for (int i = from; i < newChunks.length; i++) {
+                newStarts[i] = pos;
+                pos += newChunks[i].length;
+            }
+            return new Snapshot(newChunks, newStarts, pos);
+        }
+
+        private static Object[][] split(Object[] elements) {
+            if (elements.length == 0) {
+                return new Object[0][];
+            }
+            if (elements.length <= MAX_CHUNK_SIZE) {
+                return new Object[][] {elements};
+            }
+            int n = (elements.length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+            int chunkSize = (elements.length + n - 1) / n;
+            Object[][] result = new Object[n][];
+            for (int i = 0; i < n; i++) {
+                int from = i * chunkSize;
+                int length = Math.min(chunkSize, elements.length - from);
+                result[i] = new Object[length];
+                System.arraycopy(elements, from, result[i], 0, length);
+            }
+            return result;
+        }
+    }
+
+}
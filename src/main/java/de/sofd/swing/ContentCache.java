@@ -0,0 +1,347 @@
+package de.sofd.swing;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache for content produced by {@link GridListComponentFactory
+ * GridListComponentFactories} (e.g. decoded thumbnail images), so that a
+ * model item that's scrolled back into view can be displayed without
+ * producing its content again.
+ * <p>
+ * The cache is bounded by an estimated total size in bytes rather than by an
+ * entry count, because the sizes of the cached values typically vary a lot
+ * (small and large images). Each value's size is determined once, when it is
+ * put into the cache, by the cache's {@link SizeEstimator}. When the total
+ * exceeds the budget, the least recently used entries are evicted.
+ * <p>
+ * Keys may be the model items themselves or keys derived from them (e.g. a
+ * file name plus the thumbnail size). Hit, miss and eviction counts are
+ * recorded for tuning the budget.
+ * <p>
+ * Keys can be {@link #pin(Object) pinned} while their values are displayed;
+ * pinned entries are never evicted, since evicting them wouldn't free any
+ * memory anyway. The cache is {@link Shrinkable}, so it can be registered with
+ * a {@link MemoryPressureMonitor} to give up unpinned entries when the heap
+ * runs full.
+ * <p>
+ * Subclasses whose values hold resources that must be released explicitly
+ * can override {@link #entryRemoved(Object, Object)}, which is called for
+ * every value that leaves the cache, however it leaves.
+ * <p>
+ * Instances are thread-safe, so content may be produced and put into the
+ * cache by background threads.
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            value type
+ */
+public class ContentCache<K, V> implements Shrinkable {
+
+    /**
+     * Estimates the memory footprint of cached values.
+     *
+     * @param <V>
+     */
+    public static interface SizeEstimator<V> {
+        /**
+         *
+         * @param value
+         * @return estimated size of value in bytes; must be &gt;= 0 and must
+         *         not change while the value is in the cache
+         */
+        long estimateSize(V value);
+    }
+
+    /**
+     * SizeEstimator for {@link Image Images}. Uses the actual size of the
+     * pixel data for {@link BufferedImage BufferedImages} and assumes 4 bytes
+     * per pixel for other images.
+     */
+    public static final SizeEstimator<Image> IMAGE_SIZE_ESTIMATOR = new SizeEstimator<Image>() {
+        @Override
+        public long estimateSize(Image value) {
+            if (value instanceof BufferedImage) {
+                DataBuffer db = ((BufferedImage) value).getRaster().getDataBuffer();
+                return (long) db.getSize() * db.getNumBanks() * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+            }
+            return 4L * Math.max(0, value.getWidth(null)) * Math.max(0, value.getHeight(null));
+        }
+    };
+
+    private static class Entry<V> {
+        final V value;
+        final long size;
+
+        Entry(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    private final SizeEstimator<? super V> sizeEstimator;
+    private long maxBytes;
+    private long currentBytes = 0;
+    private final Map<K, Integer> pinCounts = new HashMap<K, Integer>();
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     *
+     * @param maxBytes
+     *            budget: maximum estimated total size of all cached values
+     * @param sizeEstimator
+     *            estimator for determining the size of each value
+     */
+    public ContentCache(long maxBytes, SizeEstimator<? super V> sizeEstimator) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >= 0");
+        }
+        this.maxBytes = maxBytes;
+        this.sizeEstimator = sizeEstimator;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the value cached for key (which becomes the most recently used
+     *         entry), or null if there is none
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Unlike {@link #get(Object)}, doesn't count as a use of the entry and
+     * doesn't affect the statistics.
+     *
+     * @param key
+     * @return whether a value is cached for key
+     */
+    public synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Put value into the cache under key, replacing any value previously
+     * cached for key, and evict least recently used entries until the cache
+     * is within its budget again. A value whose size alone exceeds the budget
+     * is not cached; it's passed to {@link #entryRemoved(Object, Object)}
+     * right away, as is the replaced value.
+     *
+     * @param key
+     * @param value
+     */
+    public synchronized void put(K key, V value) {
+        long size = sizeEstimator.estimateSize(value);
+        Entry<V> old = entries.remove(key);
+        if (old != null) {
+            currentBytes -= old.size;
+            if (old.value != value) {
+                entryRemoved(key, old.value);
+            }
+        }
+        if (size > maxBytes) {
+            entryRemoved(key, value);
+            return;
+        }
+        entries.put(key, new Entry<V>(value, size));
+        currentBytes += size;
+        evictToBudget(maxBytes);
+    }
+
+    /**
+     * Remove the entry for key, if any.
+     *
+     * @param key
+     * @return the removed value, or null
+     */
+    public synchronized V remove(K key) {
+        Entry<V> old = entries.remove(key);
+        if (old == null) {
+            return null;
+        }
+        currentBytes -= old.size;
+        entryRemoved(key, old.value);
+        return old.value;
+    }
+
+    /**
+     * Remove all entries. Doesn't count as evictions.
+     */
+    public synchronized void clear() {
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            it.remove();
+            currentBytes -= entry.getValue().size;
+            entryRemoved(entry.getKey(), entry.getValue().value);
+        }
+    }
+
+    /**
+     * Protect the entry for key (present or future) from eviction until
+     * {@link #unpin(Object)} is called as many times as this. Doesn't keep
+     * the entry from being {@link #remove(Object) removed} or
+     * {@link #put(Object, Object) replaced}. If pinned entries exceed the
+     * budget, the cache stays over budget until they're unpinned.
+     *
+     * @param key
+     */
+    public synchronized void pin(K key) {
+        Integer count = pinCounts.get(key);
+        pinCounts.put(key, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Undo one {@link #pin(Object)} call for key. Doesn't evict anything by
+     * itself.
+     *
+     * @param key
+     */
+    public synchronized void unpin(K key) {
+        Integer count = pinCounts.get(key);
+        if (count == null) {
+            throw new IllegalStateException("key not pinned: " + key);
+        }
+        if (count == 1) {
+            pinCounts.remove(key);
+        } else {
+            pinCounts.put(key, count - 1);
+        }
+    }
+
+    public synchronized boolean isPinned(K key) {
+        return pinCounts.containsKey(key);
+    }
+
+    /**
+     * Evict unpinned entries, least recently used first, until the cache
+     * uses at most targetFraction of its budget. The budget itself isn't
+     * changed.
+     */
+    @Override
+    public synchronized void shrink(double targetFraction) {
+        evictToBudget((long) (maxBytes * Math.max(0.0, Math.min(1.0, targetFraction))));
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Change the budget, evicting entries if the cache is over the new
+     * budget.
+     *
+     * @param maxBytes
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >= 0");
+        }
+        this.maxBytes = maxBytes;
+        evictToBudget(maxBytes);
+    }
+
+    /**
+     *
+     * @return estimated total size of the currently cached values
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     *
+     * @return number of currently cached entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     *
+     * @return number of entries that were evicted to stay within the budget
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized void resetStatistics() {
+        hitCount = missCount = evictionCount = 0;
+    }
+
+    private void evictToBudget(long budget) {
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (currentBytes > budget && it.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = it.next();
+            if (pinCounts.containsKey(eldest.getKey())) {
+                continue;
+            }
+            it.remove();
+            currentBytes -= eldest.getValue().size;
+            evictionCount++;
+            entryEvicted(eldest.getKey(), eldest.getValue().value);
+            entryRemoved(eldest.getKey(), eldest.getValue().value);
+        }
+    }
+
+    /**
+     * Called (with the cache's lock held) after an entry was evicted to stay
+     * within the budget or {@link #shrink(double) shrunk}, before
+     * {@link #entryRemoved(Object, Object)} is called for it. Default
+     * implementation does nothing. Subclasses may override, e.g. for
+     * collecting statistics.
+     *
+     * @param key
+     * @param value
+     */
+    protected void entryEvicted(K key, V value) {
+    }
+
+    /**
+     * Called (with the cache's lock held) for every value that leaves the
+     * cache: when its entry is evicted, {@link #remove(Object) removed},
+     * {@link #clear() cleared} or {@link #put(Object, Object) replaced} by
+     * a different value, and for a value that's too large to be put into
+     * the cache at all. Default implementation does nothing. Subclasses may
+     * override, e.g. for releasing resources held by the value. The value
+     * returned by {@link #remove(Object)} has been passed to this method
+     * already.
+     *
+     * @param key
+     * @param value
+     */
+    protected void entryRemoved(K key, V value) {
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ContentCache[" + entries.size() + " entries, " + currentBytes + "/" + maxBytes + " bytes, "
+                + hitCount + " hits, " + missCount + " misses, " + evictionCount + " evictions]";
+    }
+
+}
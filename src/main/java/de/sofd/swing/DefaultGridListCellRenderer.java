@@ -0,0 +1,102 @@
+package de.sofd.swing;
+
+import java.awt.Color;
+import java.awt.Component;
+
+import javax.swing.JLabel;
+import javax.swing.border.Border;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.LineBorder;
+
+import de.sofd.swing.GridListComponentFactory.DropLocationMarker;
+import de.sofd.swing.border.LineSegmentsBorder;
+import de.sofd.swing.border.LineSegmentsBorder.SegmentLocation;
+
+/**
+ * {@link GridListCellRenderer} counterpart of
+ * {@link DefaultGridListComponentFactory}: paints each item's toString() in a
+ * label, framed like {@link AbstractFramedSelectionGridListComponentFactory}
+ * frames selected cells and drop location markers.
+ * <p>
+ * Like {@link javax.swing.DefaultListCellRenderer}, the label overrides the
+ * validation and repaint methods as no-ops, since it's only ever used for
+ * stamping.
+ */
+public class DefaultGridListCellRenderer extends JLabel implements GridListCellRenderer {
+
+    private final int borderWidth;
+    private final Color selectionColor;
+    private final Color markerColor;
+    private final Border unselectedBorder, selectedBorder;
+
+    public DefaultGridListCellRenderer() {
+        this(2, Color.YELLOW, Color.BLUE);
+    }
+
+    public DefaultGridListCellRenderer(int borderWidth, Color selectionColor, Color markerColor) {
+        this.borderWidth = borderWidth;
+        this.selectionColor = selectionColor;
+        this.markerColor = markerColor;
+        this.unselectedBorder = new EmptyBorder(borderWidth, borderWidth, borderWidth, borderWidth);
+        this.selectedBorder = new LineBorder(selectionColor, borderWidth);
+        setOpaque(true);
+    }
+
+    @Override
+    public Component getGridListCellRendererComponent(JGridList list, Object value, int index, boolean isSelected,
+                                                      DropLocationMarker dropLocationMarker) {
+        setText("" + value);
+        setBackground(list.getBackground());
+        setForeground(list.getForeground());
+        setFont(list.getFont());
+        if (dropLocationMarker == DropLocationMarker.NONE) {
+            setBorder(isSelected ? selectedBorder : unselectedBorder);
+        } else {
+            SegmentLocation segmentLoc = SegmentLocation.NONE;
+            switch (dropLocationMarker) {
+            case BEFORE:
+                segmentLoc = SegmentLocation.WEST;
+                break;
+            case AFTER:
+                segmentLoc = SegmentLocation.EAST;
+                break;
+            case ON:
+                segmentLoc = SegmentLocation.ALL;
+                break;
+            }
+            setBorder(new LineSegmentsBorder(isSelected ? selectionColor : null, borderWidth, markerColor, segmentLoc));
+        }
+        return this;
+    }
+
+    // overridden for performance, see DefaultListCellRenderer
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void invalidate() {
+    }
+
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint() {
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
+
+    @Override
+    protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+        // only text changes matter (for html rendering)
+        if ("text".equals(propertyName)) {
+            super.firePropertyChange(propertyName, oldValue, newValue);
+        }
+    }
+
+}
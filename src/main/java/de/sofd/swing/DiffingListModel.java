@@ -0,0 +1,247 @@
+package de.sofd.swing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * {@link javax.swing.ListModel} whose contents are replaced as a whole (e.g.
+ * when a worklist is reloaded periodically), but which fires only the
+ * minimal set of {@link javax.swing.event.ListDataEvent ListDataEvents}
+ * necessary to get from the old to the new contents.
+ * <p>
+ * {@link #replaceContents(List)} matches old and new elements by their keys
+ * (see {@link KeyProvider}; by default, the elements themselves are the keys,
+ * i.e. they're matched by equality). The longest subsequence of matched
+ * elements that kept their relative order stays in place; everything else is
+ * removed or inserted. Matched elements that changed their relative order are
+ * detected as moves and are delivered as a removal plus an insertion, as
+ * ListDataEvent has no notion of moves. Elements that stayed in place but are
+ * no longer {@link Object#equals(Object) equal} to their new version (only
+ * possible with a KeyProvider) are reported via contentsChanged.
+ * <p>
+ * Together with {@link JGridList}, which only re-creates the cells of changed
+ * elements, this makes periodic reloads of mostly unchanged lists cheap.
+ */
+public class DiffingListModel extends AbstractListModel implements BulkListModel {
+
+    /**
+     * Computes the key by which an element is matched against the elements
+     * of the new contents in {@link DiffingListModel#replaceContents(List)}.
+     * Keys must implement {@link Object#equals(Object) equals} and
+     * {@link Object#hashCode() hashCode} consistently.
+     */
+    public static interface KeyProvider {
+        Object getKey(Object element);
+    }
+
+    private final List<Object> elements = new ArrayList<Object>();
+    private final KeyProvider keyProvider;
+
+    private int lastMoveCount = 0;
+
+    public DiffingListModel() {
+        this(null);
+    }
+
+    /**
+     *
+     * @param keyProvider
+     *            provider for the keys elements are matched by. null to match
+     *            by the elements themselves
+     */
+    public DiffingListModel(KeyProvider keyProvider) {
+        this.keyProvider = keyProvider;
+    }
+
+    public DiffingListModel(Collection<?> initialContents, KeyProvider keyProvider) {
+        this(keyProvider);
+        elements.addAll(initialContents);
+    }
+
+    @Override
+    public int getSize() {
+        return elements.size();
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public void getElements(int fromIndex, int toIndex, Object[] dest) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            dest[i - fromIndex] = elements.get(i);
+        }
+    }
+
+    /**
+     *
+     * @return unmodifiable view of the current contents
+     */
+    public List<Object> getContents() {
+        return Collections.unmodifiableList(elements);
+    }
+
+    /**
+     *
+     * @return number of elements detected as moved in the last
+     *         {@link #replaceContents(List)} call
+     */
+    public int getLastMoveCount() {
+        return lastMoveCount;
+    }
+
+    /**
+     * Replace the contents of this model by <i>newContents</i>, firing only
+     * the events needed to get from the old to the new contents (see class
+     * comment). The listeners see a consistent model state at each event.
+     *
+     * @param newContents
+     */
+    public void replaceContents(List<?> newContents) {
+        int oldSize = elements.size();
+        int newSize = newContents.size();
+
+        // match new elements to old ones by key (the i-th occurrence of a key
+        // in the new list to the i-th occurrence in the old list)
+        Map<Object, ArrayDeque<Integer>> oldIndicesByKey = new HashMap<Object, ArrayDeque<Integer>>();
+        for (int i = 0; i < oldSize; i++) {
+            Object key = getKey(elements.get(i));
+            ArrayDeque<Integer> indices = oldIndicesByKey.get(key);
+            if (indices == null) {
+                indices = new ArrayDeque<Integer>();
+                oldIndicesByKey.put(key, indices);
+            }
+            indices.add(i);
+        }
+        int[] newToOld = new int[newSize];
+        for (int j = 0; j < newSize; j++) {
+            ArrayDeque<Integer> indices = oldIndicesByKey.get(getKey(newContents.get(j)));
+            newToOld[j] = (indices == null || indices.isEmpty() ? -1 : indices.poll());
+        }
+
+        // the matched elements that stay in place are those in the longest
+        // increasing subsequence of old indices, in new order
+        boolean[] newKept = longestIncreasingSubsequence(newToOld);
+        boolean[] oldKept = new boolean[oldSize];
+        int matchedCount = 0, keptCount = 0;
+        for (int j = 0; j < newSize; j++) {
+            if (newToOld[j] != -1) {
+                matchedCount++;
+            }
+            if (newKept[j]) {
+                oldKept[newToOld[j]] = true;
+                keptCount++;
+            }
+        }
+        lastMoveCount = matchedCount - keptCount;
+
+        // 1. remove everything not kept, back to front
+        int i = oldSize - 1;
+        while (i >= 0) {
+            if (oldKept[i]) {
+                i--;
+                continue;
+            }
+            int runEnd = i;
+            while (i >= 0 && !oldKept[i]) {
+                i--;
+            }
+            elements.subList(i + 1, runEnd + 1).clear();
+            fireIntervalRemoved(this, i + 1, runEnd);
+        }
+
+        // 2. insert everything new (incl. move targets), front to back. The
+        // kept elements are in the right order, so each insertion index is
+        // the element's final index.
+        int j = 0;
+        while (j < newSize) {
+            if (newKept[j]) {
+                j++;
+                continue;
+            }
+            int runStart = j;
+            while (j < newSize && !newKept[j]) {
+                j++;
+            }
+            elements.addAll(runStart, newContents.subList(runStart, j));
+            fireIntervalAdded(this, runStart, j - 1);
+        }
+
+        // 3. replace kept elements whose new version isn't equal to the old one
+        j = 0;
+        while (j < newSize) {
+            if (!newKept[j] || equal(elements.get(j), newContents.get(j))) {
+                j++;
+                continue;
+            }
+            int runStart = j;
+            while (j < newSize && newKept[j] && !equal(elements.get(j), newContents.get(j))) {
+                elements.set(j, newContents.get(j));
+                j++;
+            }
+            fireContentsChanged(this, runStart, j - 1);
+        }
+    }
+
+    private Object getKey(Object element) {
+        return keyProvider == null ? element : keyProvider.getKey(element);
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    /**
+     * Compute a longest strictly increasing subsequence of the non-negative
+     * values in <i>values</i> (negative values are ignored), in O(n log n).
+     *
+     * @param values
+     * @return array of the same length as values, with true at the positions
+     *         that are part of the subsequence
+     */
+    static boolean[] longestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+        // tails[k]: position of the smallest tail value of all increasing
+        // subsequences of length k+1 found so far
+        int[] tails = new int[n];
+        int[] predecessors = new int[n];
+        int length = 0;
+        for (int pos = 0; pos < n; pos++) {
+            int v = values[pos];
+            if (v < 0) {
+                continue;
+            }
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (values[tails[mid]] < v) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            predecessors[pos] = (lo > 0 ? tails[lo - 1] : -1);
+            tails[lo] = pos;
+            if (lo == length) {
+                length++;
+            }
+        }
+        boolean[] result = new boolean[n];
+        int pos = (length > 0 ? tails[length - 1] : -1);
+        while (pos >= 0) {
+            result[pos] = true;
+            pos = predecessors[pos];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,82 @@
+package de.sofd.swing;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs Runnables submitted from any thread on the EDT, in batches: however
+ * many are submitted in the meantime, only one event is posted to the event
+ * queue, and it runs all pending Runnables at once. This keeps the event
+ * queue responsive to user input when many background jobs (e.g. loading
+ * cell content) finish at about the same time.
+ * <p>
+ * A batch runs for at most {@link #getMaxBatchMillis()}; Runnables left over
+ * run in the next batch, so a flood of results can't freeze the UI.
+ */
+public class EdtBatchDispatcher {
+
+    private static final EdtBatchDispatcher defaultInstance = new EdtBatchDispatcher(10);
+
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final long maxBatchMillis;
+
+    private final Runnable batchRunner = new Runnable() {
+        @Override
+        public void run() {
+            scheduled.set(false);
+            long deadline = System.nanoTime() + maxBatchMillis * 1000000L;
+            Runnable r;
+            while ((r = pending.poll()) != null) {
+                r.run();
+                if (System.nanoTime() - deadline > 0) {
+                    break;
+                }
+            }
+            if (!pending.isEmpty()) {
+                schedule();
+            }
+        }
+    };
+
+    /**
+     *
+     * @param maxBatchMillis
+     *            maximum time one batch may take
+     */
+    public EdtBatchDispatcher(long maxBatchMillis) {
+        this.maxBatchMillis = maxBatchMillis;
+    }
+
+    /**
+     *
+     * @return the instance used by {@link CellBinding#publish(Runnable)}
+     */
+    public static EdtBatchDispatcher getDefault() {
+        return defaultInstance;
+    }
+
+    public long getMaxBatchMillis() {
+        return maxBatchMillis;
+    }
+
+    /**
+     * Run r on the EDT with the next batch. May be called from any thread;
+     * Runnables submitted from one thread run in submission order.
+     *
+     * @param r
+     */
+    public void dispatch(Runnable r) {
+        pending.add(r);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(batchRunner);
+        }
+    }
+
+}
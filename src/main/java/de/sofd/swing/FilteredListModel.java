@@ -0,0 +1,465 @@
+package de.sofd.swing;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.swing.AbstractListModel;
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * {@link ListModel} decorator that presents the elements of a source
+ * ListModel that are accepted by a {@link Filter}, in source order. Can be
+ * displayed by a {@link JGridList} or JList like any other ListModel.
+ * <p>
+ * The view-to-source index mapping is kept in a primitive, ascending int
+ * array. Events from the source model are processed incrementally: only the
+ * added or changed source elements are (re-)evaluated, and the events are
+ * translated into the minimal corresponding events on this model. When the
+ * filter is replaced (see {@link #setFilter(Filter)}), the whole source is
+ * re-evaluated -- in parallel on the common {@link ForkJoinPool} for large
+ * sources, so filters must be thread-safe -- and the difference between the
+ * old and the new view is again delivered as a minimal set of events, unless
+ * it consists of so many scattered ranges that announcing the change in size
+ * at the end of the view followed by a single contentsChanged event is
+ * cheaper for the listeners.
+ */
+public class FilteredListModel extends AbstractListModel implements BulkListModel {
+
+    /**
+     * Filter deciding which source elements are visible. May be called
+     * concurrently from multiple threads.
+     */
+    public static interface Filter {
+        boolean accept(Object element);
+    }
+
+    /**
+     * minimum number of elements to evaluate for going parallel
+     */
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    /**
+     * maximum number of elements evaluated in one parallel subtask
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 2048;
+
+    /**
+     * maximum number of events a re-filtering may result in before it's
+     * delivered as a replacement of the whole view instead
+     */
+    private static final int MAX_INCREMENTAL_EVENTS = 32;
+
+    private final ListModel source;
+    private Filter filter;
+    private int sourceSize;
+    private int[] viewToSource = new int[0];
+    private int viewSize = 0;
+
+    /**
+     *
+     * @param source
+     * @param filter
+     *            initial filter; null to accept all elements
+     */
+    public FilteredListModel(ListModel source, Filter filter) {
+        this.source = source;
+        this.filter = filter;
+        this.sourceSize = source.getSize();
+        boolean[] accepted = evaluate(0, sourceSize);
+        viewToSource = toMapping(accepted);
+        viewSize = viewToSource.length;
+        source.addListDataListener(sourceListener);
+    }
+
+    public ListModel getSource() {
+        return source;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Replace the filter and re-evaluate all source elements.
+     *
+     * @param filter
+     *            new filter; null to accept all elements
+     */
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+        refilter();
+    }
+
+    /**
+     * Re-evaluate all source elements, e.g. after the filter's criteria
+     * changed.
+     */
+    public void refilter() {
+        sourceSize = source.getSize();
+        applyMapping(toMapping(evaluate(0, sourceSize)), -1, -1);
+    }
+
+    /**
+     * Re-evaluate all source elements after an unspecific change of the
+     * source, after which the old mapping is meaningless.
+     */
+    private void reset() {
+        int oldSize = viewSize;
+        sourceSize = source.getSize();
+        viewToSource = toMapping(evaluate(0, sourceSize));
+        viewSize = viewToSource.length;
+        fireReplaced(oldSize, viewSize);
+    }
+
+    /**
+     * Announce that the whole view has been replaced: the change in size at
+     * the end of the view, followed by a contentsChanged event for the range
+     * both sizes share.
+     */
+    private void fireReplaced(int oldSize, int newSize) {
+        if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        } else if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        }
+        int commonSize = Math.min(oldSize, newSize);
+        if (commonSize > 0) {
+            fireContentsChanged(this, 0, commonSize - 1);
+        }
+    }
+
+    /**
+     * Stop listening to the source model. Needed if the source model lives
+     * longer than this model.
+     */
+    public void dispose() {
+        source.removeListDataListener(sourceListener);
+    }
+
+    @Override
+    public int getSize() {
+        return viewSize;
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        if (index < 0 || index >= viewSize) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return source.getElementAt(viewToSource[index]);
+    }
+
+    @Override
+    public void getElements(int fromIndex, int toIndex, Object[] dest) {
+        if (fromIndex < 0 || toIndex > viewSize) {
+            throw new IndexOutOfBoundsException("" + fromIndex + ".." + toIndex);
+        }
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        int sourceFrom = viewToSource[fromIndex];
+        int sourceTo = viewToSource[toIndex - 1] + 1;
+        if (source instanceof BulkListModel && sourceTo - sourceFrom <= 4 * (toIndex - fromIndex)) {
+            // dense enough to fetch the whole source range in one go
+            Object[] sourceElements = new Object[sourceTo - sourceFrom];
+            ((BulkListModel) source).getElements(sourceFrom, sourceTo, sourceElements);
+            for (int i = fromIndex; i < toIndex; i++) {
+                dest[i - fromIndex] = sourceElements[viewToSource[i] - sourceFrom];
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex; i++) {
+                dest[i - fromIndex] = source.getElementAt(viewToSource[i]);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param viewIndex
+     * @return index in the source model of the element at viewIndex
+     */
+    public int convertViewIndexToSource(int viewIndex) {
+        if (viewIndex < 0 || viewIndex >= viewSize) {
+            throw new IndexOutOfBoundsException("" + viewIndex);
+        }
+        return viewToSource[viewIndex];
+    }
+
+    /**
+     *
+     * @param sourceIndex
+     * @return index in this model of the source element at sourceIndex, or
+     *         -1 if that element is filtered out
+     */
+    public int convertSourceIndexToView(int sourceIndex) {
+        int pos = lowerBound(sourceIndex);
+        return (pos < viewSize && viewToSource[pos] == sourceIndex) ? pos : -1;
+    }
+
+    /**
+     *
+     * @param sourceIndex
+     * @return position of the first view element whose source index is >=
+     *         sourceIndex
+     */
+    private int lowerBound(int sourceIndex) {
+        int lo = 0, hi = viewSize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (viewToSource[mid] < sourceIndex) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private final ListDataListener sourceListener = new ListDataListener() {
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0) {
+                reset();
+                return;
+            }
+            int n = index1 - index0 + 1;
+            sourceSize += n;
+            int pos = lowerBound(index0);
+            for (int i = pos; i < viewSize; i++) {
+                viewToSource[i] += n;
+            }
+            int[] added = toMapping(evaluate(index0, index1 + 1));
+            if (added.length == 0) {
+                return;
+            }
+            int[] newMapping = new int[viewSize + added.length];
+            System.arraycopy(viewToSource, 0, newMapping, 0, pos);
+            for (int i = 0; i < added.length; i++) {
+                newMapping[pos + i] = added[i] + index0;
+            }
+            System.arraycopy(viewToSource, pos, newMapping, pos + added.length, viewSize - pos);
+            viewToSource = newMapping;
+            viewSize = newMapping.length;
+            fireIntervalAdded(FilteredListModel.this, pos, pos + added.length - 1);
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0) {
+                reset();
+                return;
+            }
+            int n = index1 - index0 + 1;
+            sourceSize -= n;
+            int from = lowerBound(index0);
+            int to = lowerBound(index1 + 1);
+            for (int i = to; i < viewSize; i++) {
+                viewToSource[i] -= n;
+            }
+            if (from == to) {
+                return;
+            }
+            System.arraycopy(viewToSource, to, viewToSource, from, viewSize - to);
+            viewSize -= to - from;
+            fireIntervalRemoved(FilteredListModel.this, from, to - 1);
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0 || source.getSize() != sourceSize) {
+                reset();
+                return;
+            }
+            boolean[] accepted = evaluate(index0, index1 + 1);
+            int from = lowerBound(index0);
+            int to = lowerBound(index1 + 1);
+            int[] changedAccepted = toMapping(accepted);
+            int[] newMapping = new int[viewSize - (to - from) + changedAccepted.length];
+            System.arraycopy(viewToSource, 0, newMapping, 0, from);
+            for (int i = 0; i < changedAccepted.length; i++) {
+                newMapping[from + i] = changedAccepted[i] + index0;
+            }
+            System.arraycopy(viewToSource, to, newMapping, from + changedAccepted.length, viewSize - to);
+            applyMapping(newMapping, index0, index1);
+        }
+
+    };
+
+    /**
+     * Replace the current view-to-source mapping by <i>newMapping</i> (both in
+     * the same source index space), firing the events for the difference.
+     * Elements that are contained in both mappings are regarded as changed if
+     * their source index is in [changedFrom, changedTo].
+     */
+    private void applyMapping(int[] newMapping, int changedFrom, int changedTo) {
+        int[] oldMapping = viewToSource;
+        int oldSize = viewSize;
+        int newSize = newMapping.length;
+
+        // 1. walk both (ascending) mappings in parallel, collecting runs of
+        // removed (-1), added (1) and changed (0) elements as
+        // {type, position in the view at the time of the event, length}
+        int[] runs = new int[3 * (MAX_INCREMENTAL_EVENTS + 1)];
+        int runCount = 0;
+        int i = 0, j = 0, pos = 0;
+        while (i < oldSize || j < newSize) {
+            int type, length = 0;
+            if (j >= newSize || (i < oldSize && oldMapping[i] < newMapping[j])) {
+                type = -1;
+                while (i < oldSize && (j >= newSize || oldMapping[i] < newMapping[j])) {
+                    i++;
+                    length++;
+                }
+            } else if (i >= oldSize || newMapping[j] < oldMapping[i]) {
+                type = 1;
+                while (j < newSize && (i >= oldSize || newMapping[j] < oldMapping[i])) {
+                    j++;
+                    length++;
+                }
+            } else if (oldMapping[i] >= changedFrom && oldMapping[i] <= changedTo) {
+                type = 0;
+                while (i < oldSize && j < newSize && oldMapping[i] == newMapping[j] &&
+                        oldMapping[i] >= changedFrom && oldMapping[i] <= changedTo) {
+                    i++;
+                    j++;
+                    length++;
+                }
+            } else {
+                i++;
+                j++;
+                pos++;
+                continue;
+            }
+            if (runCount > MAX_INCREMENTAL_EVENTS) {
+                continue;  // just finish the walk
+            }
+            runs[3 * runCount] = type;
+            runs[3 * runCount + 1] = pos;
+            runs[3 * runCount + 2] = length;
+            runCount++;
+            if (type != -1) {
+                pos += length;
+            }
+        }
+
+        if (runCount > MAX_INCREMENTAL_EVENTS) {
+            viewToSource = newMapping;
+            viewSize = newSize;
+            fireReplaced(oldSize, newSize);
+            return;
+        }
+
+        // 2. deliver the runs one by one, updating the mapping before each
+        // event so listeners see a consistent state. At any time, the
+        // current mapping consists of the first p elements of newMapping,
+        // followed by the not yet processed rest of oldMapping.
+        int[] work = new int[oldSize + newSize];
+        System.arraycopy(oldMapping, 0, work, 0, oldSize);
+        viewToSource = work;
+        for (int r = 0; r < runCount; r++) {
+            int type = runs[3 * r], p = runs[3 * r + 1], length = runs[3 * r + 2];
+            switch (type) {
+            case -1:
+                System.arraycopy(work, p + length, work, p, viewSize - p - length);
+                viewSize -= length;
+                fireIntervalRemoved(this, p, p + length - 1);
+                break;
+            case 1:
+                System.arraycopy(work, p, work, p + length, viewSize - p);
+                System.arraycopy(newMapping, p, work, p, length);
+                viewSize += length;
+                fireIntervalAdded(this, p, p + length - 1);
+                break;
+            default:
+                fireContentsChanged(this, p, p + length - 1);
+            }
+        }
+        viewToSource = newMapping;
+        viewSize = newSize;
+    }
+
+    /**
+     * Evaluate the filter for the source elements in [fromIndex, toIndex).
+     */
+    private boolean[] evaluate(int fromIndex, int toIndex) {
+        int n = toIndex - fromIndex;
+        boolean[] result = new boolean[n];
+        if (filter == null) {
+            Arrays.fill(result, true);
+            return result;
+        }
+        // fetch the elements on this thread; only the filter itself is run in parallel
+        Object[] elements = new Object[n];
+        if (source instanceof BulkListModel) {
+            ((BulkListModel) source).getElements(fromIndex, toIndex, elements);
+        } else {
+            for (int i = 0; i < n; i++) {
+                elements[i] = source.getElementAt(fromIndex + i);
+            }
+        }
+        if (n >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new FilterTask(filter, elements, result, 0, n));
+        } else {
+            for (int i = 0; i < n; i++) {
+                result[i] = filter.accept(elements[i]);
+            }
+        }
+        return result;
+    }
+
+    private static int[] toMapping(boolean[] accepted) {
+        int count = 0;
+        for (boolean a : accepted) {
+            if (a) {
+                count++;
+            }
+        }
+        int[] result = new int[count];
+        int n = 0;
+        for (int i = 0; i < accepted.length; i++) {
+            if (accepted[i]) {
+                result[n++] = i;
+            }
+        }
+        return result;
+    }
+
+    private static class FilterTask extends RecursiveAction {
+        private final Filter filter;
+        private final Object[] elements;
+        private final boolean[] result;
+        private final int from, to;
+
+        FilterTask(Filter filter, Object[] elements, boolean[] result, int from, int to) {
+            this.filter = filter;
+            this.elements = elements;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    result[i] = filter.accept(elements[i]);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FilterTask(filter, elements, result, from, mid),
+                          new FilterTask(filter, elements, result, mid, to));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package de.sofd.swing;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Insets;
+import java.awt.LayoutManager;
+import java.awt.Rectangle;
+
+/**
+ * Layout that arranges the components of a container in a grid of equally
+ * sized cells with a fixed number of rows and columns, the i-th component
+ * (in row-major order) in the i-th cell. The geometry is the same as that of
+ * a {@link java.awt.GridLayout} without gaps: the cell bounds depend only on
+ * the container's size and the grid shape, never on the components.
+ * <p>
+ * That allows users to tell whether the last layout is still
+ * {@link #isLayoutCurrent(Container) current}, and if it is, to skip
+ * validating the whole container when only the contents of some cells
+ * changed, and just validate those cells (see
+ * {@link #getCellBounds(Container, int)}).
+ */
+public class FixedGridLayout implements LayoutManager {
+
+    private final int rows, cols;
+
+    // container size and insets as of the last layout
+    private int laidOutWidth = -1, laidOutHeight = -1;
+    private Insets laidOutInsets;
+
+    public FixedGridLayout(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("rows, cols must be > 0");
+        }
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    /**
+     *
+     * @param parent
+     * @param index
+     *            cell index, in row-major order
+     * @return bounds of the cell at index, relative to parent, for parent's
+     *         current size
+     */
+    public Rectangle getCellBounds(Container parent, int index) {
+        Insets insets = parent.getInsets();
+        int w = parent.getWidth() - insets.left - insets.right;
+        int h = parent.getHeight() - insets.top - insets.bottom;
+        int cellW = w / cols, cellH = h / rows;
+        // center the grid if the size isn't divisible, like GridLayout
+        int x0 = insets.left + (w - cellW * cols) / 2;
+        int y0 = insets.top + (h - cellH * rows) / 2;
+        return new Rectangle(x0 + (index % cols) * cellW, y0 + (index / cols) * cellH, cellW, cellH);
+    }
+
+    /**
+     *
+     * @param parent
+     * @return whether parent has been laid out by this layout at its current
+     *         size, i.e. the cell bounds haven't changed since
+     */
+    public boolean isLayoutCurrent(Container parent) {
+        return parent.getWidth() == laidOutWidth && parent.getHeight() == laidOutHeight
+                && parent.getInsets().equals(laidOutInsets);
+    }
+
+    @Override
+    public void addLayoutComponent(String name, Component comp) {
+    }
+
+    @Override
+    public void removeLayoutComponent(Component comp) {
+    }
+
+    @Override
+    public Dimension preferredLayoutSize(Container parent) {
+        return layoutSize(parent, true);
+    }
+
+    @Override
+    public Dimension minimumLayoutSize(Container parent) {
+        return layoutSize(parent, false);
+    }
+
+    private Dimension layoutSize(Container parent, boolean preferred) {
+        int w = 0, h = 0;
+        for (Component c : getCellComponents(parent)) {
+            if (c != null) {
+                Dimension d = preferred ? c.getPreferredSize() : c.getMinimumSize();
+                w = Math.max(w, d.width);
+                h = Math.max(h, d.height);
+            }
+        }
+        Insets insets = parent.getInsets();
+        return new Dimension(insets.left + insets.right + w * cols, insets.top + insets.bottom + h * rows);
+    }
+
+    @Override
+    public void layoutContainer(Container parent) {
+        Component[] cells = getCellComponents(parent);
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != null) {
+                cells[i].setBounds(getCellBounds(parent, i));
+            }
+        }
+        laidOutWidth = parent.getWidth();
+        laidOutHeight = parent.getHeight();
+        laidOutInsets = parent.getInsets();
+    }
+
+    /**
+     *
+     * @param parent
+     * @return the components to put into the cells, in cell order (null
+     *         for empty cells). Default is parent's components. Subclasses
+     *         may override to decouple the cells from the child order.
+     */
+    protected Component[] getCellComponents(Container parent) {
+        return parent.getComponents();
+    }
+
+}
@@ -0,0 +1,35 @@
+package de.sofd.swing;
+
+import java.awt.Component;
+
+import de.sofd.swing.GridListComponentFactory.DropLocationMarker;
+
+/**
+ * Renderer for painting the cells of a {@link JGridList} in
+ * {@link JGridList#setCellRenderer(GridListCellRenderer) renderer mode}. Works
+ * like a {@link javax.swing.ListCellRenderer}: for each displayed cell, the
+ * list asks the renderer for a component configured to display the cell's
+ * model item, and "stamps" that component onto the cell, so a single
+ * component (usually the renderer itself) can paint all cells.
+ */
+public interface GridListCellRenderer {
+
+    /**
+     * 
+     * @param list
+     *            the list being painted
+     * @param value
+     *            the model item to paint
+     * @param index
+     *            the model index of value
+     * @param isSelected
+     *            whether the item is selected
+     * @param dropLocationMarker
+     *            the drop location marker to paint for the cell
+     * @return component whose paint method paints the cell. It is sized to
+     *         the cell before being painted
+     */
+    Component getGridListCellRendererComponent(JGridList list, Object value, int index, boolean isSelected,
+                                               DropLocationMarker dropLocationMarker);
+
+}
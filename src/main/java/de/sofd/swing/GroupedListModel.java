@@ -0,0 +1,244 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * {@link javax.swing.ListModel} of items that are organized in groups (e.g.
+ * images grouped by series), each of which can be collapsed and expanded.
+ * <p>
+ * The model presents the groups flattened into one list: each group
+ * contributes one header element -- the {@link Group} object itself --
+ * followed by its items if the group is expanded. So header cells are
+ * created, reused and deleted by a {@link JGridList}'s
+ * {@link GridListComponentFactory} like any other cell (see
+ * {@link GroupingGridListComponentFactory} for a factory that delegates
+ * headers and items to different factories), and a JGridList toggles a group
+ * when its header cell is clicked.
+ * <p>
+ * Only the start index of each group is stored, so collapsing or expanding a
+ * group costs O(number of groups) regardless of the group's size, and
+ * results in a single intervalRemoved or intervalAdded event.
+ */
+public class GroupedListModel extends AbstractListModel implements BulkListModel {
+
+    /**
+     * A group of items. Also the header element representing the group in
+     * the model.
+     */
+    public static class Group {
+        private final Object value;
+        private final Object[] items;
+        private boolean collapsed;
+
+        private Group(Object value, Object[] items, boolean collapsed) {
+            this.value = value;
+            this.items = items;
+            this.collapsed = collapsed;
+        }
+
+        /**
+         *
+         * @return the value (e.g. series) the group represents
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        public int getItemCount() {
+            return items.length;
+        }
+
+        public Object getItem(int index) {
+            return items[index];
+        }
+
+        public boolean isCollapsed() {
+            return collapsed;
+        }
+
+        private int getDisplayedCount() {
+            return collapsed ? 1 : 1 + items.length;
+        }
+
+        @Override
+        public String toString() {
+            return "" + value;
+        }
+    }
+
+    private final List<Group> groups = new ArrayList<Group>();
+
+    /**
+     * groupStarts[i]: model index of group i's header; groupStarts[groups.size()]: model size
+     */
+    private int[] groupStarts = new int[] {0};
+
+    public GroupedListModel() {
+    }
+
+    @Override
+    public int getSize() {
+        return groupStarts[groups.size()];
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        if (index < 0 || index >= getSize()) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        int g = getGroupIndexAt(index);
+        int offset = index - groupStarts[g];
+        Group group = groups.get(g);
+        return offset == 0 ? group : group.items[offset - 1];
+    }
+
+    @Override
+    public void getElements(int fromIndex, int toIndex, Object[] dest) {
+        if (fromIndex < 0 || toIndex > getSize()) {
+            throw new IndexOutOfBoundsException("" + fromIndex + ".." + toIndex);
+        }
+        int i = fromIndex;
+        int g = (fromIndex < toIndex ? getGroupIndexAt(fromIndex) : 0);
+        while (i < toIndex) {
+            Group group = groups.get(g);
+            int groupEnd = Math.min(toIndex, groupStarts[g + 1]);
+            for (; i < groupEnd; i++) {
+                int offset = i - groupStarts[g];
+                dest[i - fromIndex] = (offset == 0 ? group : group.items[offset - 1]);
+            }
+            g++;
+        }
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    public Group getGroup(int groupIndex) {
+        return groups.get(groupIndex);
+    }
+
+    public int getGroupIndex(Group group) {
+        return groups.indexOf(group);
+    }
+
+    /**
+     *
+     * @param index
+     *            model index
+     * @return index of the group that the element at <i>index</i> (header or
+     *         item) belongs to
+     */
+    public int getGroupIndexAt(int index) {
+        int lo = 0, hi = groups.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (groupStarts[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     *
+     * @param groupIndex
+     * @return model index of the header of the group at groupIndex
+     */
+    public int getHeaderIndex(int groupIndex) {
+        if (groupIndex < 0 || groupIndex >= groups.size()) {
+            throw new IndexOutOfBoundsException("" + groupIndex);
+        }
+        return groupStarts[groupIndex];
+    }
+
+    public Group addGroup(Object value, Collection<?> items) {
+        return insertGroup(groups.size(), value, items, false);
+    }
+
+    public Group insertGroup(int groupIndex, Object value, Collection<?> items, boolean collapsed) {
+        Group group = new Group(value, items.toArray(), collapsed);
+        groups.add(groupIndex, group);
+        updateGroupStarts(groupIndex);
+        int start = groupStarts[groupIndex];
+        fireIntervalAdded(this, start, start + group.getDisplayedCount() - 1);
+        return group;
+    }
+
+    public void removeGroup(int groupIndex) {
+        int start = getHeaderIndex(groupIndex);
+        Group group = groups.remove(groupIndex);
+        updateGroupStarts(groupIndex);
+        fireIntervalRemoved(this, start, start + group.getDisplayedCount() - 1);
+    }
+
+    public void clear() {
+        int size = getSize();
+        groups.clear();
+        groupStarts = new int[] {0};
+        if (size > 0) {
+            fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+
+    public void setCollapsed(int groupIndex, boolean collapsed) {
+        Group group = groups.get(groupIndex);
+        if (group.collapsed == collapsed) {
+            return;
+        }
+        group.collapsed = collapsed;
+        updateGroupStarts(groupIndex);
+        int n = group.items.length;
+        if (n == 0) {
+            return;
+        }
+        int firstItemIndex = groupStarts[groupIndex] + 1;
+        if (collapsed) {
+            fireIntervalRemoved(this, firstItemIndex, firstItemIndex + n - 1);
+        } else {
+            fireIntervalAdded(this, firstItemIndex, firstItemIndex + n - 1);
+        }
+        // the header itself may show the collapsed state
+        fireContentsChanged(this, firstItemIndex - 1, firstItemIndex - 1);
+    }
+
+    public void setCollapsed(Group group, boolean collapsed) {
+        int groupIndex = getGroupIndex(group);
+        if (groupIndex == -1) {
+            throw new IllegalArgumentException("group not contained in this model: " + group);
+        }
+        setCollapsed(groupIndex, collapsed);
+    }
+
+    public void toggleCollapsed(Group group) {
+        setCollapsed(group, !group.isCollapsed());
+    }
+
+    public void setAllCollapsed(boolean collapsed) {
+        for (int g = 0; g < groups.size(); g++) {
+            setCollapsed(g, collapsed);
+        }
+    }
+
+    /**
+     * Recompute groupStarts for the groups from <i>fromGroupIndex</i> on.
+     */
+    private void updateGroupStarts(int fromGroupIndex) {
+        int n = groups.size();
+        if (groupStarts.length != n + 1) {
+            int[] newStarts = new int[n + 1];
+            System.arraycopy(groupStarts, 0, newStarts, 0, Math.min(fromGroupIndex + 1, Math.min(groupStarts.length, n + 1)));
+            groupStarts = newStarts;
+        }
+        for (int g = fromGroupIndex; g < n; g++) {
+            groupStarts[g + 1] = groupStarts[g] + groups.get(g).getDisplayedCount();
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package de.sofd.swing;
+
+import java.awt.Dimension;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+/**
+ * {@link GridListComponentFactory} for {@link JGridList JGridLists} displaying
+ * a {@link GroupedListModel}. Delegates the group header elements
+ * ({@link GroupedListModel.Group} instances) to a header factory and all other
+ * elements to an item factory, so header cells go through the same
+ * create/reuse/delete lifecycle as item cells.
+ * <p>
+ * Components are reused if the delegate for the new element supports it, and
+ * only for elements of the same kind (header or item) as the one the
+ * component was created for. Otherwise the component is deleted through the
+ * delegate that created it, and the new element's delegate creates a new one.
+ * Cell sizes are passed on to delegates that are
+ * {@link SizeAwareGridListComponentFactory size-aware}.
+ */
+public class GroupingGridListComponentFactory implements SizeAwareGridListComponentFactory {
+
+    private static final String CREATING_FACTORY_PROPERTY = GroupingGridListComponentFactory.class.getName() + ".creatingFactory";
+    private static final String MODEL_ITEM_PROPERTY = GroupingGridListComponentFactory.class.getName() + ".modelItem";
+
+    private final GridListComponentFactory headerFactory;
+    private final GridListComponentFactory itemFactory;
+
+    public GroupingGridListComponentFactory(GridListComponentFactory itemFactory) {
+        this(new DefaultHeaderComponentFactory(), itemFactory);
+    }
+
+    public GroupingGridListComponentFactory(GridListComponentFactory headerFactory, GridListComponentFactory itemFactory) {
+        this.headerFactory = headerFactory;
+        this.itemFactory = itemFactory;
+    }
+
+    public GridListComponentFactory getHeaderFactory() {
+        return headerFactory;
+    }
+
+    public GridListComponentFactory getItemFactory() {
+        return itemFactory;
+    }
+
+    protected GridListComponentFactory getFactoryFor(Object modelItem) {
+        return modelItem instanceof GroupedListModel.Group ? headerFactory : itemFactory;
+    }
+
+    @Override
+    public JComponent createComponent(JGridList source, JPanel parent, Object modelItem) {
+        return createComponent(source, parent, modelItem, null, 1.0);
+    }
+
+    @Override
+    public JComponent createComponent(JGridList source, JPanel parent, Object modelItem, Dimension cellSize, double deviceScale) {
+        GridListComponentFactory factory = getFactoryFor(modelItem);
+        if (parent.getComponentCount() > 0) {
+            JComponent existing = (JComponent) parent.getComponent(0);
+            Object creator = existing.getClientProperty(CREATING_FACTORY_PROPERTY);
+            if (creator != factory || !factory.canReuseComponents()) {
+                // created by the other delegate, or this one can't reuse it
+                if (creator instanceof GridListComponentFactory) {
+                    ((GridListComponentFactory) creator).deleteComponent
+                        (source, parent, existing.getClientProperty(MODEL_ITEM_PROPERTY), existing);
+                }
+                if (existing.getParent() == parent) {
+                    parent.remove(existing);
+                }
+            }
+        }
+        JComponent result;
+        if (cellSize != null && factory instanceof SizeAwareGridListComponentFactory) {
+            result = ((SizeAwareGridListComponentFactory) factory).createComponent(source, parent, modelItem, cellSize, deviceScale);
+        } else {
+            result = factory.createComponent(source, parent, modelItem);
+        }
+        result.putClientProperty(CREATING_FACTORY_PROPERTY, factory);
+        result.putClientProperty(MODEL_ITEM_PROPERTY, modelItem);
+        return result;
+    }
+
+    @Override
+    public void setSelectedStatusAndDropLocationMarker(JGridList source, JPanel parent, Object modelItem,
+            boolean selected, DropLocationMarker marker, JComponent component) {
+        getFactoryFor(modelItem).setSelectedStatusAndDropLocationMarker(source, parent, modelItem, selected, marker, component);
+    }
+
+    @Override
+    public void parentUiStateChanged(JGridList source, JPanel parent, JComponent component) {
+        Object factory = component.getClientProperty(CREATING_FACTORY_PROPERTY);
+        if (factory instanceof GridListComponentFactory) {
+            ((GridListComponentFactory) factory).parentUiStateChanged(source, parent, component);
+        }
+    }
+
+    @Override
+    public void cellSizeChanged(JGridList source, JPanel parent, Object modelItem, JComponent component, Dimension cellSize, double deviceScale) {
+        Object factory = component.getClientProperty(CREATING_FACTORY_PROPERTY);
+        if (factory instanceof SizeAwareGridListComponentFactory) {
+            ((SizeAwareGridListComponentFactory) factory).cellSizeChanged(source, parent, modelItem, component, cellSize, deviceScale);
+        }
+    }
+
+    @Override
+    public void deleteComponent(JGridList source, JPanel parent, Object modelItem, JComponent component) {
+        Object factory = component.getClientProperty(CREATING_FACTORY_PROPERTY);
+        (factory instanceof GridListComponentFactory ? (GridListComponentFactory) factory : getFactoryFor(modelItem))
+            .deleteComponent(source, parent, modelItem, component);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * True if either delegate can reuse components; {@link #createComponent(JGridList, JPanel, Object)
+     * createComponent} replaces components that the new element's delegate
+     * can't reuse.
+     */
+    @Override
+    public boolean canReuseComponents() {
+        return headerFactory.canReuseComponents() || itemFactory.canReuseComponents();
+    }
+
+    /**
+     * Simple header factory displaying the group's value, item count and
+     * collapsed state in a label.
+     */
+    public static class DefaultHeaderComponentFactory extends AbstractBgColorSelectionGridListComponentFactory {
+
+        @Override
+        public JComponent createComponent(JGridList source, JPanel parent, Object modelItem) {
+            GroupedListModel.Group group = (GroupedListModel.Group) modelItem;
+            JLabel l = new JLabel((group.isCollapsed() ? "[+] " : "[-] ") + group.getValue() + " (" + group.getItemCount() + ")");
+            l.setOpaque(true);
+            parent.add(l);
+            return l;
+        }
+
+    }
+
+}
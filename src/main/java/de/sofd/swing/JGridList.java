@@ -5,20 +5,36 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
 import java.awt.GridLayout;
+import java.awt.Insets;
+import java.awt.LayoutManager;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
+import java.awt.event.AWTEventListener;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.swing.AbstractAction;
 import javax.swing.AbstractListModel;
 import javax.swing.Action;
 import javax.swing.ActionMap;
 import javax.swing.BoundedRangeModel;
+import javax.swing.CellRendererPane;
 import javax.swing.DefaultListSelectionModel;
 import javax.swing.DropMode;
 import javax.swing.InputMap;
@@ -30,7 +46,9 @@ import javax.swing.KeyStroke;
 import javax.swing.ListCellRenderer;
 import javax.swing.ListModel;
 import javax.swing.ListSelectionModel;
+import javax.swing.RepaintManager;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.TransferHandler;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -57,6 +75,13 @@ import de.sofd.swing.GridListComponentFactory.DropLocationMarker;
  * must implement a special interface, {@link GridListComponentFactory}, which
  * is consulted whenever a component representing an item in the JGridList's
  * ListModel needs to be created.
+ * <p>
+ * For large grids, the list can alternatively be put into renderer mode by
+ * setting a {@link GridListCellRenderer} (see
+ * {@link #setCellRenderer(GridListCellRenderer)}). The cells are then
+ * painted by the renderer, like those of a JList, and the component factory
+ * (if any) is only consulted for a live component for the cell under the
+ * mouse.
  * 
  * @author Olaf Klischat
  */
@@ -79,11 +104,89 @@ public class JGridList extends JPanel {
     
     private DropLocation renderedDropLocation;
     
+    // cache of the model's size and of the model elements in the currently
+    // displayed window, so we don't ask the model for the same elements over
+    // and over again (which may be expensive, e.g. for database-backed
+    // models). The previously displayed window is retained as well because its
+    // elements are still needed while cells are being re-assigned after a
+    // scroll or grid size change. Everything is valid until the next
+    // ListDataEvent from the model (see #invalidateModelCache()).
+    private int cachedModelSize = -1;
+    private Object[] windowItems = null;
+    private int windowStart = 0;
+    private Object[] prevWindowItems = null;
+    private int prevWindowStart = 0;
+    
+    // displayed model elements implementing ObservableListItem that we're
+    // registered with, mapped to the number of cells displaying them
+    private Map<ObservableListItem, Integer> observedItems = new IdentityHashMap<ObservableListItem, Integer>();
+    
+    // the listeners actually registered with the model/selection model/items:
+    // either our listeners themselves, or weak wrappers around them (see
+    // #setWeakListeners())
+    private boolean weakListeners = false;
+    private ListDataListener registeredModelChangeListener;
+    private ListSelectionListener registeredListSelectionListener;
+    private ChangeListener weakItemChangeListener;
+    
+    // cell size and device scale last reported to a
+    // SizeAwareGridListComponentFactory
+    private Dimension notifiedCellSize = null;
+    private double notifiedDeviceScale = 1.0;
+    
+    // live resizing: cell size notifications are deferred until the cell
+    // size has been stable for cellSizeSettleDelay ms
+    private int cellSizeSettleDelay = 200;
+    private boolean cellSizeAdjusting = false;
+    private final Timer cellSizeSettleTimer;
+    
+    // renderer mode (see #setCellRenderer()): cellsContainer has no cell
+    // containers, the cells are painted by cellRenderer instead. Only the cell
+    // under the mouse gets a live component from the component factory, in
+    // liveCellContainer.
+    private GridListCellRenderer cellRenderer;
+    private CellRendererPane rendererPane;
+    private JPanel liveCellContainer;
+    private int liveChildIndex = -1;
+    private Object liveModelItem;
+    // mouse events over the live cell go to the live component if it has
+    // mouse listeners, so the list doesn't see the mouse leave the cell
+    private final AWTEventListener liveCellExitListener = new AWTEventListener() {
+        @Override
+        public void eventDispatched(AWTEvent event) {
+            if (event.getID() != MouseEvent.MOUSE_EXITED || liveCellContainer == null) {
+                return;
+            }
+            MouseEvent e = (MouseEvent) event;
+            if (SwingUtilities.isDescendingFrom(e.getComponent(), liveCellContainer)
+                    && !isOverLiveCell(e.getComponent(), e.getPoint())) {
+                releaseLiveCell();
+            }
+        }
+    };
+    
+    // direct cell hosting (see #setDirectCellHosting()): the factory
+    // components are direct children of cellsContainer, laid out by a
+    // DirectCellsLayout. The factories get a CellSlot per cell as the
+    // component's "parent"; the slots are kept in cellSlots, in child index
+    // order.
+    private boolean directCellHosting = false;
+    private final List<CellSlot> cellSlots = new ArrayList<CellSlot>();
+    
+    // buffered painting (see #setBufferedPainting()): cellsContainer renders
+    // into paintBuffer and paints from there. On scrolls by whole rows, the
+    // buffer's content is shifted and painted right away; during that paint,
+    // bufferValidRows marks the grid rows whose buffer content is current,
+    // which aren't rendered (null: no such rows).
+    private boolean bufferedPainting = false;
+    private BufferedImage paintBuffer;
+    private boolean[] bufferValidRows;
+    
     // invariants (conditions that hold whenever the outside code
     // can interact with this component):
     //
-    // - the component's layout is a GridLayout with nRows rows and
-    //   nCols columns
+    // - cellsContainer's layout is a FixedGridLayout with nRows rows and
+    //   nCols columns (null in renderer mode)
     //
     // - the component contains nRows*nCols direct child components called
     //   "containers", each of which is a JPanel that contains either 0 or 1
@@ -103,8 +206,15 @@ public class JGridList extends JPanel {
     }
     
     public JGridList() {
+        cellSizeSettleTimer = new Timer(cellSizeSettleDelay, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                checkCellSizeChanged();
+            }
+        });
+        cellSizeSettleTimer.setRepeats(false);
         setLayout(new BorderLayout());
-        cellsContainer = new JPanel();
+        cellsContainer = new CellsContainer();
         this.add(cellsContainer, BorderLayout.CENTER);
         setTransferHandler(new DefaultTransferHandler(this));
         setShowScrollbar(true);
@@ -159,18 +269,26 @@ public class JGridList extends JPanel {
     }
     
     protected void copyUiStateToSubComponent(int childIndex) {
-        if (this.getComponentCount() > childIndex) {
-            Component c = cellsContainer.getComponent(childIndex);
-            c.setBackground(getBackground());
-            if (c instanceof Container && componentFactory != null) {
-                Container cont = (Container)c;
-                if (cont.getComponentCount() > 0) {
-                    // cont is the container, cont.getComponent(0) is
-                    // the component created by the componentFactory
-                    // (see #addComponent)
-                    componentFactory.parentUiStateChanged
-                        (this, (JPanel)cont, (JComponent)cont.getComponent(0));
-                }
+        if (cellRenderer != null) {
+            if (liveCellContainer != null) {
+                copyUiStateToCellContainer(liveCellContainer);
+            }
+            cellsContainer.repaint();
+        } else if (this.getComponentCount() > childIndex) {
+            copyUiStateToCellContainer(getCellContainer(childIndex));
+        }
+    }
+
+    private void copyUiStateToCellContainer(Component c) {
+        c.setBackground(getBackground());
+        if (c instanceof Container && componentFactory != null) {
+            Container cont = (Container)c;
+            if (cont.getComponentCount() > 0) {
+                // cont is the container, cont.getComponent(0) is
+                // the component created by the componentFactory
+                // (see #addComponent)
+                componentFactory.parentUiStateChanged
+                    (this, (JPanel)cont, (JComponent)cont.getComponent(0));
             }
         }
     }
@@ -178,6 +296,10 @@ public class JGridList extends JPanel {
     @Override
     public void setBackground(Color bg) {
         super.setBackground(bg);
+        if (cellsContainer != null) {
+            // visible in empty cells in renderer and direct hosting mode
+            cellsContainer.setBackground(bg);
+        }
         copyUiStateToSubComponents();
     }
     
@@ -195,12 +317,14 @@ public class JGridList extends JPanel {
      * @post UI is initialized according to our current member variable values
      */
     private void reInitEmptyUI() {
-        cellsContainer.setLayout(new GridLayout(nRows, nCols));
+        cellsContainer.setLayout(createCellsLayout(nRows, nCols));
         int displayedCount = nRows * nCols;
+        loadWindow(firstDisplayedIdx, displayedCount);
         for (int childIndex = 0; childIndex < displayedCount; childIndex++) {
             int modelIndex = firstDisplayedIdx + childIndex;
             addComponent(modelIndex, childIndex);
         }
+        updateObservedItems();
         updateScrollbar();
         revalidate();
         validate();
@@ -220,12 +344,92 @@ public class JGridList extends JPanel {
         validate();
     }
 
+    private LayoutManager createCellsLayout(int rows, int cols) {
+        if (cellRenderer != null) {
+            // CellsContainer positions the live cell itself
+            return null;
+        }
+        return directCellHosting ? new DirectCellsLayout(rows, cols) : new FixedGridLayout(rows, cols);
+    }
+
+    private JPanel newCellContainer() {
+        return directCellHosting ? new CellSlot() : new CellContainer();
+    }
+
+    /**
+     * Lay out and validate the cells after their contents changed. If the
+     * cell geometry is still the one cellsContainer was last laid out with
+     * (i.e. neither the list's size nor the grid shape changed), the cells
+     * are positioned directly and only those that are invalid are validated,
+     * instead of validating the whole list.
+     */
+    private void validateCells() {
+        LayoutManager lm = cellsContainer.getLayout();
+        if (!(lm instanceof FixedGridLayout) || !((FixedGridLayout) lm).isLayoutCurrent(cellsContainer)) {
+            revalidate();
+            validate();
+            return;
+        }
+        FixedGridLayout layout = (FixedGridLayout) lm;
+        int displayedCount = nRows * nCols;
+        for (int childIndex = 0; childIndex < displayedCount; childIndex++) {
+            JPanel container = getCellContainer(childIndex);
+            Rectangle r = layout.getCellBounds(cellsContainer, childIndex);
+            Component cell = container;
+            if (directCellHosting) {
+                container.setBounds(r);
+                cell = ((CellSlot) container).hosted;
+                if (cell == null) {
+                    continue;
+                }
+            }
+            if (!r.equals(cell.getBounds())) {
+                cell.setBounds(r);
+            }
+            if (!cell.isValid()) {
+                cell.validate();
+            }
+        }
+    }
+
+    /**
+     * 
+     * @param childIndex
+     * @return the container of the cell at childIndex: the panel in
+     *         cellsContainer, or the CellSlot in direct hosting mode
+     */
+    private JPanel getCellContainer(int childIndex) {
+        return directCellHosting ? cellSlots.get(childIndex) : (JPanel) cellsContainer.getComponent(childIndex);
+    }
+
+    private void insertCellContainer(JPanel container, int childIndex) {
+        if (directCellHosting) {
+            cellSlots.add(childIndex, (CellSlot) container);
+            cellsContainer.revalidate();
+        } else {
+            cellsContainer.add(container, childIndex);
+        }
+    }
+
+    private void removeCellContainer(int childIndex) {
+        if (directCellHosting) {
+            cellSlots.remove(childIndex).removeAll();
+            cellsContainer.revalidate();
+        } else {
+            cellsContainer.remove(childIndex);
+        }
+    }
+
     private void addComponent(int modelIndex, int childIndex) {
-        JPanel container = new JPanel(new GridLayout(1,1));
+        if (cellRenderer != null) {
+            rendererCellsChanged();
+            return;
+        }
+        JPanel container = newCellContainer();
         container.setVisible(true);
-        if (model != null && modelIndex < model.getSize() && componentFactory != null) {
-            Object modelItem = model.getElementAt(modelIndex);
-            JComponent comp = componentFactory.createComponent(this, container, modelItem);
+        if (model != null && modelIndex < getModelSize() && componentFactory != null) {
+            Object modelItem = getModelElement(modelIndex);
+            JComponent comp = createCellComponent(container, modelItem);
             comp.setVisible(true);
             componentFactory.setSelectedStatusAndDropLocationMarker
                     (this,
@@ -235,19 +439,193 @@ public class JGridList extends JPanel {
                      getDropLocationMarkerForIndex(modelIndex),
                      comp);
         }
-        cellsContainer.add(container, childIndex);
+        insertCellContainer(container, childIndex);
         copyUiStateToSubComponent(childIndex);
     }
     
+    private static final String CELL_BINDING_PROPERTY = JGridList.class.getName() + ".cellBinding";
+
+    /**
+     * 
+     * @param cellContainer
+     *            the parent panel of a cell, as passed to the component
+     *            factory
+     * @return the cell's current binding to a model item, or null if the
+     *         cell isn't bound to an item. Only valid during and after the
+     *         component factory's createComponent call for the binding.
+     */
+    public CellBinding getCellBinding(JPanel cellContainer) {
+        return (CellBinding) cellContainer.getClientProperty(CELL_BINDING_PROPERTY);
+    }
+
+    private void unbindCell(JPanel container) {
+        CellBinding binding = getCellBinding(container);
+        if (binding != null) {
+            binding.invalidate();
+            container.putClientProperty(CELL_BINDING_PROPERTY, null);
+        }
+    }
+
+    private JComponent createCellComponent(JPanel container, Object modelItem) {
+        unbindCell(container);
+        if (modelItem != null) {
+            container.putClientProperty(CELL_BINDING_PROPERTY, new CellBinding(container, modelItem));
+        }
+        if (componentFactory instanceof SizeAwareGridListComponentFactory) {
+            Dimension cellSize = getCellSize();
+            double deviceScale = getDeviceScale();
+            if (notifiedCellSize == null) {
+                notifiedCellSize = cellSize;
+                notifiedDeviceScale = deviceScale;
+            }
+            return ((SizeAwareGridListComponentFactory) componentFactory).createComponent
+                    (this, container, modelItem, cellSize, deviceScale);
+        }
+        return componentFactory.createComponent(this, container, modelItem);
+    }
+
+    /**
+     * 
+     * @return current size of the cells, in logical pixels, as of the last
+     *         layout of the list. 0x0 if the list has no size yet.
+     */
+    public Dimension getCellSize() {
+        int w = cellsContainer.getWidth(), h = cellsContainer.getHeight();
+        if (w <= 0 || h <= 0) {
+            Insets insets = getInsets();
+            w = getWidth() - insets.left - insets.right;
+            h = getHeight() - insets.top - insets.bottom;
+            if (scrollBar != null) {
+                w -= scrollBar.getPreferredSize().width;
+            }
+        }
+        if (w <= 0 || h <= 0) {
+            return new Dimension(0, 0);
+        }
+        return new Dimension(w / nCols, h / nRows);
+    }
+
+    /**
+     * 
+     * @return number of device pixels per logical pixel of the screen the
+     *         list is displayed on (&gt; 1 on HiDPI screens), or 1.0 if
+     *         unknown
+     */
+    public double getDeviceScale() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null) {
+            return 1.0;
+        }
+        return gc.getDefaultTransform().getScaleX();
+    }
+
+    @Override
+    public void doLayout() {
+        super.doLayout();
+        // the cells container (and thus the cells) may have been resized,
+        // e.g. while the user is dragging the window border. Wait for the
+        // size to settle before having the cells re-render their content.
+        if (cellSizeSettleDelay <= 0 || notifiedCellSize == null) {
+            checkCellSizeChanged();
+        } else if (!notifiedCellSize.equals(getCellSize()) || getDeviceScale() != notifiedDeviceScale) {
+            // also when moved to a screen with a different scale
+            setCellSizeAdjusting(true);
+            cellSizeSettleTimer.restart();
+        }
+    }
+
+    /**
+     * 
+     * @return whether the cell size is currently changing, i.e. the list is
+     *         being resized and the size hasn't been stable for
+     *         {@link #getCellSizeSettleDelay()} ms yet. Cell components may
+     *         check this and only stretch their existing content cheaply
+     *         while it is true
+     */
+    public boolean isCellSizeAdjusting() {
+        return cellSizeAdjusting;
+    }
+
+    private void setCellSizeAdjusting(boolean cellSizeAdjusting) {
+        if (cellSizeAdjusting == this.cellSizeAdjusting) { return; }
+        this.cellSizeAdjusting = cellSizeAdjusting;
+        firePropertyChange("cellSizeAdjusting", !cellSizeAdjusting, cellSizeAdjusting);
+        if (!cellSizeAdjusting) {
+            // cells may have painted their content cheaply while adjusting.
+            // Components whose content doesn't change after the adjustment
+            // wouldn't repaint themselves
+            cellsContainer.repaint();
+        }
+    }
+
+    public int getCellSizeSettleDelay() {
+        return cellSizeSettleDelay;
+    }
+
+    /**
+     * Sets the time (in ms) the cell size must have been stable after a
+     * resize of the list before a {@link SizeAwareGridListComponentFactory}
+     * is notified about it. 0 means notifying on every resize. Default is
+     * 200.
+     * 
+     * @param cellSizeSettleDelay
+     */
+    public void setCellSizeSettleDelay(int cellSizeSettleDelay) {
+        this.cellSizeSettleDelay = cellSizeSettleDelay;
+        cellSizeSettleTimer.setInitialDelay(Math.max(0, cellSizeSettleDelay));
+    }
+
+    /**
+     * If the cell size or device scale changed since the last call, notify
+     * a {@link SizeAwareGridListComponentFactory} about it.
+     */
+    private void checkCellSizeChanged() {
+        cellSizeSettleTimer.stop();
+        setCellSizeAdjusting(false);
+        Dimension cellSize = getCellSize();
+        double deviceScale = getDeviceScale();
+        if (cellSize.equals(notifiedCellSize) && deviceScale == notifiedDeviceScale) {
+            return;
+        }
+        notifiedCellSize = cellSize;
+        notifiedDeviceScale = deviceScale;
+        if (!(componentFactory instanceof SizeAwareGridListComponentFactory) || model == null) {
+            return;
+        }
+        SizeAwareGridListComponentFactory factory = (SizeAwareGridListComponentFactory) componentFactory;
+        if (cellRenderer != null) {
+            if (liveCellContainer != null && liveCellContainer.getComponentCount() > 0) {
+                factory.cellSizeChanged(this, liveCellContainer, liveModelItem,
+                                        (JComponent) liveCellContainer.getComponent(0), cellSize, deviceScale);
+            }
+            return;
+        }
+        int displayedCount = nRows * nCols;
+        int modelSize = getModelSize();
+        for (int childIndex = 0; childIndex < displayedCount; childIndex++) {
+            int modelIndex = firstDisplayedIdx + childIndex;
+            JPanel container = getCellContainer(childIndex);
+            if (modelIndex < modelSize && container.getComponentCount() > 0) {
+                factory.cellSizeChanged(this, container, getModelElement(modelIndex),
+                                        (JComponent) container.getComponent(0), cellSize, deviceScale);
+            }
+        }
+    }
+
     private void setComponent(int modelIndex, int prevModelIndex, int childIndex) {
+        if (cellRenderer != null) {
+            rendererCellsChanged();
+            return;
+        }
         if (componentFactory != null) {
-            JPanel container = (JPanel) cellsContainer.getComponent(childIndex);
+            JPanel container = getCellContainer(childIndex);
             if (modelIndex < 0) {   // modelIndex == -1 => set container at childIndex to "no model element"
                 if (container.getComponentCount() > 0) {   // == (prevModelIndex >= 0)
                     JComponent component = (JComponent) container.getComponent(0);
                     if (prevModelIndex >= 0) {
                         if (container.getComponentCount() > 0) {
-                            Object modelItem = model.getElementAt(prevModelIndex);
+                            Object modelItem = getModelElement(prevModelIndex);
+                            unbindCell(container);
                             componentFactory.deleteComponent(this, container, modelItem, component);
                             if (container.getComponentCount() > 0) {
                                 container.remove(0);
@@ -255,13 +633,13 @@ public class JGridList extends JPanel {
                             container.repaint();
                         }
                     } else {
-                        componentFactory.createComponent(this, container, null);
+                        createCellComponent(container, null);
                     }
                 }
             } else {
-                if (model != null && modelIndex < model.getSize()) {
-                    Object modelItem = model.getElementAt(modelIndex);
-                    JComponent comp = componentFactory.createComponent(this, container, modelItem);
+                if (model != null && modelIndex < getModelSize()) {
+                    Object modelItem = getModelElement(modelIndex);
+                    JComponent comp = createCellComponent(container, modelItem);
                     comp.setVisible(true);
                     componentFactory.setSelectedStatusAndDropLocationMarker
                             (this,
@@ -276,135 +654,1020 @@ public class JGridList extends JPanel {
         }
     }
 
-    private void removeComponent(int modelIndex, int childIndex, boolean removeContainer) {
-        JPanel container = (JPanel) cellsContainer.getComponent(childIndex);
-        if (model != null && modelIndex < model.getSize() && componentFactory != null) {
-            Object modelItem = model.getElementAt(modelIndex);
-            if (container.getComponentCount() > 0) { // may be 0 if e.g. the model grew since last reInitEmptyUI()
-                JComponent component = (JComponent) container.getComponent(0);
-                componentFactory.deleteComponent(this, container, modelItem, component);
-            }
+    private void removeComponent(int modelIndex, int childIndex, boolean removeContainer) {
+        if (cellRenderer != null) {
+            rendererCellsChanged();
+            return;
+        }
+        JPanel container = getCellContainer(childIndex);
+        unbindCell(container);
+        if (model != null && modelIndex < getModelSize() && componentFactory != null) {
+            Object modelItem = getModelElement(modelIndex);
+            if (container.getComponentCount() > 0) { // may be 0 if e.g. the model grew since last reInitEmptyUI()
+                JComponent component = (JComponent) container.getComponent(0);
+                componentFactory.deleteComponent(this, container, modelItem, component);
+            }
+        }
+        if (removeContainer) {
+            removeCellContainer(childIndex);
+        }
+    }
+
+    /**
+     *
+     * @param modelIndex modelIndex
+     * @return the component (created by this list's component factory) that currently
+     *         displays the model element at index modelIndex. null if that element
+     *         isn't currently visible.
+     */
+    public JComponent getComponentFor(int modelIndex) {
+        if (cellRenderer != null) {
+            if (liveCellContainer != null && modelIndex >= 0 && modelIndex - firstDisplayedIdx == liveChildIndex
+                    && liveCellContainer.getComponentCount() > 0) {
+                return (JComponent) liveCellContainer.getComponent(0);
+            }
+            return null;
+        }
+        if (model != null && modelIndex < getModelSize()) {
+            int displayedCount = nRows * nCols;
+            int childIndex = modelIndex - getFirstDisplayedIdx();
+            if (childIndex >= 0 && childIndex < displayedCount) {
+                JPanel container = getCellContainer(childIndex);
+                return (JComponent) container.getComponent(0);
+            }
+        }
+        return null;
+    }
+
+    public void refresh() {
+        deleteUI();
+        invalidateModelCache();
+        reInitEmptyUI();
+    }
+    
+    public void repaintCells() {
+        if (cellRenderer != null) {
+            cellsContainer.repaint();
+            return;
+        }
+        if (model != null) {
+            int displayedCount = nRows * nCols;
+            for (int i = 0; i < displayedCount; i++) {
+                JComponent c = getCellContainer(i);
+                if (c.getComponentCount() > 0) {
+                    c.getComponent(0).repaint();
+                }
+            }
+        }
+    }
+    
+    public void repaintCell(int modelIndex) {
+        if (cellRenderer != null) {
+            repaintRendererCell(modelIndex);
+        }
+        JComponent c = getComponentFor(modelIndex);
+        if (c != null) {
+            c.repaint();
+        }
+    }
+    
+    protected void repaintCellSelectionAndDropLocationMarker(int modelIndex) {
+        if (cellRenderer != null) {
+            repaintRendererCell(modelIndex);
+        }
+        JComponent comp = getComponentFor(modelIndex);
+        if (comp == null) {
+            return;
+        }
+        JPanel container = cellRenderer != null ? liveCellContainer : getCellContainer(modelIndex - firstDisplayedIdx);
+        Object modelItem = getModelElement(modelIndex);
+        componentFactory.setSelectedStatusAndDropLocationMarker
+            (JGridList.this,
+             container,
+             modelItem,
+             selectionModel != null && selectionModel.isSelectedIndex(modelIndex),
+             getDropLocationMarkerForIndex(modelIndex),
+             comp);
+    }
+
+    public ListModel getModel() {
+        return model;
+    }
+
+    public void setModel(ListModel model) {
+        if (model == this.model) { return; }
+        deleteUI();
+        unregisterModelChangeListener();
+        this.model = model;
+        invalidateModelCache();
+        registerModelChangeListener();
+        reInitEmptyUI();
+    }
+
+    private void registerModelChangeListener() {
+        if (model != null) {
+            registeredModelChangeListener = weakListeners
+                    ? new WeakListeners.WeakListDataListener(modelChangeListener, model)
+                    : modelChangeListener;
+            model.addListDataListener(registeredModelChangeListener);
+        }
+    }
+
+    private void unregisterModelChangeListener() {
+        if (model != null && registeredModelChangeListener != null) {
+            model.removeListDataListener(registeredModelChangeListener);
+        }
+        registeredModelChangeListener = null;
+    }
+
+    /**
+     * 
+     * @return the size of the model, as of the last ListDataEvent received
+     *         from it
+     */
+    protected int getModelSize() {
+        if (cachedModelSize < 0) {
+            cachedModelSize = (model == null ? 0 : model.getSize());
+        }
+        return cachedModelSize;
+    }
+
+    /**
+     * Get the model element at index <i>modelIndex</i>, using the cached
+     * elements of the displayed window if possible.
+     * 
+     * @param modelIndex
+     * @return
+     */
+    protected Object getModelElement(int modelIndex) {
+        if (windowItems != null && modelIndex >= windowStart && modelIndex < windowStart + windowItems.length) {
+            return windowItems[modelIndex - windowStart];
+        }
+        if (prevWindowItems != null && modelIndex >= prevWindowStart && modelIndex < prevWindowStart + prevWindowItems.length) {
+            return prevWindowItems[modelIndex - prevWindowStart];
+        }
+        return model.getElementAt(modelIndex);
+    }
+
+    /**
+     * Drop all cached model information. Must be called whenever the model
+     * (may have) changed.
+     */
+    private void invalidateModelCache() {
+        cachedModelSize = -1;
+        windowItems = null;
+        prevWindowItems = null;
+    }
+
+    /**
+     * Make the window of <i>count</i> model elements starting at
+     * <i>start</i> the current cached window. The current window becomes the
+     * previous one. Elements already contained in the current window are
+     * taken from there, the remaining ones are fetched from the model, in one
+     * call per contiguous range if the model is a {@link BulkListModel}.
+     * 
+     * @param start
+     * @param count
+     */
+    private void loadWindow(int start, int count) {
+        if (model == null) {
+            return;
+        }
+        int end = Math.max(start, Math.min(start + count, getModelSize()));
+        Object[] items = new Object[end - start];
+        int reusedStart = end, reusedEnd = end;
+        if (windowItems != null) {
+            reusedStart = Math.max(start, windowStart);
+            reusedEnd = Math.min(end, windowStart + windowItems.length);
+            if (reusedStart < reusedEnd) {
+                System.arraycopy(windowItems, reusedStart - windowStart, items, reusedStart - start, reusedEnd - reusedStart);
+            } else {
+                reusedStart = reusedEnd = end;
+            }
+        }
+        fetchModelElements(start, reusedStart, items, 0);
+        fetchModelElements(reusedEnd, end, items, reusedEnd - start);
+        prevWindowItems = windowItems;
+        prevWindowStart = windowStart;
+        windowItems = items;
+        windowStart = start;
+    }
+
+    private void fetchModelElements(int fromIndex, int toIndex, Object[] dest, int destPos) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        if (model instanceof BulkListModel) {
+            if (destPos == 0) {
+                ((BulkListModel) model).getElements(fromIndex, toIndex, dest);
+            } else {
+                Object[] tmp = new Object[toIndex - fromIndex];
+                ((BulkListModel) model).getElements(fromIndex, toIndex, tmp);
+                System.arraycopy(tmp, 0, dest, destPos, tmp.length);
+            }
+        } else {
+            for (int i = fromIndex; i < toIndex; i++) {
+                dest[destPos + i - fromIndex] = model.getElementAt(i);
+            }
+        }
+    }
+
+    private ListDataListener modelChangeListener = new ListDataListener() {
+        
+        // Only the cells whose model elements actually changed are
+        // (re-)created. Cells whose elements were merely shifted to a
+        // different index keep their components.
+        // The model cache is dropped only after the old cells have been
+        // deleted, so the component factory still gets to see the old
+        // elements in deleteComponent().
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0 || model.getSize() != getModelSize()) {
+                refresh();
+            } else {
+                rebindCells(index0, index1);
+            }
+        }
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0) {
+                refresh();
+            } else {
+                remapCells(index0, index1 - index0 + 1, 0);
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0) {
+                refresh();
+            } else {
+                remapCells(index0, 0, index1 - index0 + 1);
+            }
+        }
+        
+    };
+
+    /**
+     * Re-create the cells displaying the model elements in the index range
+     * [fromIndex, toIndex] after the elements in that range changed (without
+     * the model's size changing).
+     * 
+     * @param fromIndex
+     * @param toIndex
+     */
+    private void rebindCells(int fromIndex, int toIndex) {
+        int displayedCount = nRows * nCols;
+        int first = Math.max(fromIndex, firstDisplayedIdx);
+        int last = Math.min(Math.min(toIndex, firstDisplayedIdx + displayedCount - 1), getModelSize() - 1);
+        if (first > last || componentFactory == null) {
+            invalidateModelCache();
+            loadWindow(firstDisplayedIdx, displayedCount);
+            updateObservedItems();
+            return;
+        }
+        if (componentFactory.canReuseComponents()) {
+            invalidateModelCache();
+            loadWindow(firstDisplayedIdx, displayedCount);
+            for (int modelIndex = first; modelIndex <= last; modelIndex++) {
+                setComponent(modelIndex, modelIndex, modelIndex - firstDisplayedIdx);
+            }
+        } else {
+            for (int modelIndex = last; modelIndex >= first; modelIndex--) {
+                removeComponent(modelIndex, modelIndex - firstDisplayedIdx, true);
+            }
+            invalidateModelCache();
+            loadWindow(firstDisplayedIdx, displayedCount);
+            for (int modelIndex = first; modelIndex <= last; modelIndex++) {
+                addComponent(modelIndex, modelIndex - firstDisplayedIdx);
+            }
+        }
+        updateObservedItems();
+        validateCells();
+    }
+
+    /**
+     * Update the cells after <i>removedCount</i> model elements starting at
+     * index <i>index0</i> were replaced by <i>addedCount</i> new elements. The
+     * cells of elements that are still displayed afterwards (possibly at a
+     * different position) are kept, all other cells are deleted, and cells
+     * for newly displayed elements are created.
+     * 
+     * @param index0
+     * @param addedCount
+     * @param removedCount
+     */
+    private void remapCells(int index0, int addedCount, int removedCount) {
+        if (componentFactory == null) {
+            refresh();
+            return;
+        }
+        int displayedCount = nRows * nCols;
+        int oldSize = getModelSize();
+        int newSize = model.getSize();
+        // oldChildIndices[i]: child index that displayed the element that
+        // will be displayed at child index i, or -1 if there was none
+        int[] oldChildIndices = new int[displayedCount];
+        boolean[] kept = new boolean[displayedCount];
+        for (int childIndex = 0; childIndex < displayedCount; childIndex++) {
+            int modelIndex = firstDisplayedIdx + childIndex;
+            int oldModelIndex;
+            if (modelIndex < index0) {
+                oldModelIndex = modelIndex;
+            } else if (modelIndex < index0 + addedCount) {
+                oldModelIndex = -1;
+            } else {
+                oldModelIndex = modelIndex - addedCount + removedCount;
+            }
+            int oldChildIndex = oldModelIndex - firstDisplayedIdx;
+            if (modelIndex < newSize && oldModelIndex >= 0 && oldModelIndex < oldSize &&
+                    oldChildIndex >= 0 && oldChildIndex < displayedCount) {
+                oldChildIndices[childIndex] = oldChildIndex;
+                kept[oldChildIndex] = true;
+            } else {
+                oldChildIndices[childIndex] = -1;
+            }
+        }
+        for (int childIndex = displayedCount - 1; childIndex >= 0; childIndex--) {
+            if (!kept[childIndex]) {
+                removeComponent(firstDisplayedIdx + childIndex, childIndex, true);
+            }
+        }
+        invalidateModelCache();
+        loadWindow(firstDisplayedIdx, displayedCount);
+        // the kept cells are still in the right order, so inserting the new
+        // ones in ascending order puts everything in place
+        for (int childIndex = 0; childIndex < displayedCount; childIndex++) {
+            if (oldChildIndices[childIndex] == -1) {
+                addComponent(firstDisplayedIdx + childIndex, childIndex);
+            } else if (oldChildIndices[childIndex] != childIndex) {
+                // element moved to a different index; selection and drop
+                // location are index-based, so they may have changed
+                repaintCellSelectionAndDropLocationMarker(firstDisplayedIdx + childIndex);
+            }
+        }
+        updateObservedItems();
+        updateScrollbar();
+        validateCells();
+    }
+    
+    /**
+     * Register {@link #itemChangeListener} with the displayed (i.e. cached
+     * window) elements implementing {@link ObservableListItem}, and deregister
+     * it from all elements that are no longer displayed.
+     */
+    private void updateObservedItems() {
+        Map<ObservableListItem, Integer> newObservedItems = null;
+        if (windowItems != null) {
+            for (Object item : windowItems) {
+                if (item instanceof ObservableListItem) {
+                    if (newObservedItems == null) {
+                        newObservedItems = new IdentityHashMap<ObservableListItem, Integer>();
+                    }
+                    Integer count = newObservedItems.get(item);
+                    newObservedItems.put((ObservableListItem) item, count == null ? 1 : count + 1);
+                }
+            }
+        }
+        if (newObservedItems == null) {
+            if (observedItems.isEmpty()) {
+                return;
+            }
+            newObservedItems = new IdentityHashMap<ObservableListItem, Integer>();
+        }
+        for (ObservableListItem item : observedItems.keySet()) {
+            if (!newObservedItems.containsKey(item)) {
+                item.removeChangeListener(getRegisteredItemChangeListener());
+            }
+        }
+        for (ObservableListItem item : newObservedItems.keySet()) {
+            if (!observedItems.containsKey(item)) {
+                item.addChangeListener(getRegisteredItemChangeListener());
+            }
+        }
+        observedItems = newObservedItems;
+    }
+
+    private ChangeListener getRegisteredItemChangeListener() {
+        return weakItemChangeListener != null ? weakItemChangeListener : itemChangeListener;
+    }
+
+    private ChangeListener itemChangeListener = new ChangeListener() {
+        @Override
+        public void stateChanged(final ChangeEvent e) {
+            if (!SwingUtilities.isEventDispatchThread()) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        stateChanged(e);
+                    }
+                });
+                return;
+            }
+            rebindItemCells(e.getSource());
+        }
+    };
+
+    /**
+     * Re-create the cells currently displaying <i>item</i>, after the item
+     * notified us of a change of its state. The model itself didn't change, so
+     * the model cache stays valid.
+     * 
+     * @param item
+     */
+    private void rebindItemCells(Object item) {
+        if (windowItems == null || componentFactory == null || !observedItems.containsKey(item)) {
+            return;
+        }
+        for (int i = 0; i < windowItems.length; i++) {
+            if (windowItems[i] != item) {
+                continue;
+            }
+            int modelIndex = windowStart + i;
+            int childIndex = modelIndex - firstDisplayedIdx;
+            if (cellRenderer != null) {
+                if (childIndex == liveChildIndex) {
+                    releaseLiveCell();
+                }
+                repaintRendererCell(modelIndex);
+                continue;
+            }
+            if (componentFactory.canReuseComponents()) {
+                setComponent(modelIndex, modelIndex, childIndex);
+            } else {
+                removeComponent(modelIndex, childIndex, true);
+                addComponent(modelIndex, childIndex);
+            }
+            JComponent container = getCellContainer(childIndex);
+            container.revalidate();
+            container.repaint();
+        }
+    }
+    
+    public GridListComponentFactory getComponentFactory() {
+        return componentFactory;
+    }
+
+    /**
+     * Sets or re-sets the JGridList's component factory, which is consulted
+     * to create the JComponents that make up the cells of the list. Setting
+     * the component factory while the list is already displayed will initiate
+     * a complete refresh of the UI, including a re-creation of all the cell
+     * components.
+     *
+     * @param componentFactory
+     */
+    public void setComponentFactory(GridListComponentFactory componentFactory) {
+        if (componentFactory == this.componentFactory) { return; }
+        deleteUI();
+        this.componentFactory = componentFactory;
+        notifiedCellSize = null;
+        reInitEmptyUI();
+    }
+
+    public GridListCellRenderer getCellRenderer() {
+        return cellRenderer;
+    }
+
+    /**
+     * Sets the renderer for painting the cells, switching the list to
+     * renderer mode, or back to normal mode if cellRenderer is null (the
+     * default).
+     * <p>
+     * In normal mode, each displayed cell consists of a live component (plus
+     * its container panel) created by the component factory. In renderer
+     * mode, the cells are stamped by the renderer like a JList's cells, so
+     * the number of components, and the memory and layout cost, don't grow
+     * with the grid size. Only the cell under the mouse gets a live
+     * component from the component factory (if one is set), which is placed
+     * over the painted cell, so the user can interact with it. It is deleted
+     * again when the mouse moves to another cell, or when the cell is
+     * rebound.
+     *
+     * @param cellRenderer
+     */
+    public void setCellRenderer(GridListCellRenderer cellRenderer) {
+        if (cellRenderer == this.cellRenderer) { return; }
+        deleteUI();
+        this.cellRenderer = cellRenderer;
+        if (cellRenderer != null && rendererPane == null) {
+            rendererPane = new CellRendererPane();
+            cellsContainer.add(rendererPane);
+        } else if (cellRenderer == null && rendererPane != null) {
+            cellsContainer.remove(rendererPane);
+            rendererPane = null;
+        }
+        reInitEmptyUI();
+        cellsContainer.repaint();
+    }
+
+    public boolean isDirectCellHosting() {
+        return directCellHosting;
+    }
+
+    /**
+     * Sets whether the components created by the component factory are
+     * direct children of the list's cells panel (true), or are each wrapped
+     * in a container panel of their own (false, the default).
+     * <p>
+     * Direct hosting halves the number of components and saves a layout
+     * pass per cell, which speeds up validation of large grids. Component
+     * factories work unchanged: the "parent" they get passed for each cell is
+     * a stand-in panel that isn't displayed itself, but has the cell's bounds
+     * and background, and adding a component to it (or removing it) actually
+     * adds the component to (or removes it from) the cells panel. The
+     * component's {@link Component#getParent() parent} is the cells panel
+     * then, though, so factories must use the parent passed to them rather
+     * than the component's actual parent.
+     * 
+     * @param directCellHosting
+     */
+    public void setDirectCellHosting(boolean directCellHosting) {
+        if (directCellHosting == this.directCellHosting) { return; }
+        deleteUI();
+        this.directCellHosting = directCellHosting;
+        reInitEmptyUI();
+    }
+
+    public boolean isBufferedPainting() {
+        return bufferedPainting;
+    }
+
+    /**
+     * Sets whether the cells are painted via a back buffer holding the
+     * whole rendered grid (default false).
+     * <p>
+     * When the list is scrolled by whole rows while buffered painting is
+     * on, the rows that remain visible are shifted inside the buffer, and
+     * only the newly exposed rows are rendered, i.e. the components of the
+     * other cells aren't painted at all. This speeds up scrolling if
+     * painting the cells is expensive, e.g. with scaled thumbnails or on
+     * remote displays. It costs an image of the list's size.
+     *
+     * @param bufferedPainting
+     */
+    public void setBufferedPainting(boolean bufferedPainting) {
+        if (bufferedPainting == this.bufferedPainting) { return; }
+        this.bufferedPainting = bufferedPainting;
+        paintBuffer = null;
+        bufferValidRows = null;
+        cellsContainer.repaint();
+    }
+
+    /**
+     *
+     * @param childIndex
+     * @return bounds of the cell at childIndex, relative to cellsContainer
+     */
+    private Rectangle getGridCellBounds(int childIndex) {
+        if (cellRenderer != null) {
+            return getRendererCellBounds(childIndex);
+        }
+        return ((FixedGridLayout) cellsContainer.getLayout()).getCellBounds(cellsContainer, childIndex);
+    }
+
+    /**
+     * Buffered painting: Shift the buffer's content for a scroll of the list
+     * by delta model elements, if that's a scroll by whole rows.
+     *
+     * @param delta
+     * @return the rows whose buffer content is current after the scroll, or
+     *         null if the buffer couldn't be shifted
+     */
+    private boolean[] scrollPaintBuffer(int delta) {
+        int rowShift = delta / nCols;
+        if (paintBuffer == null || delta % nCols != 0 || Math.abs(rowShift) >= nRows || !cellsContainer.isShowing()) {
+            return null;
         }
-        if (removeContainer) {
-            cellsContainer.remove(childIndex);
+        // paint pending changes first, so the content being shifted is current
+        Rectangle pending = takePendingCellsRepaints();
+        if (!pending.isEmpty()) {
+            cellsContainer.paintImmediately(pending);
+        }
+        if (paintBuffer == null || paintBuffer.getWidth() != cellsContainer.getWidth()
+                || paintBuffer.getHeight() != cellsContainer.getHeight()) {
+            return null;
+        }
+        Rectangle first = getGridCellBounds(0);
+        int shiftedRows = nRows - Math.abs(rowShift);
+        boolean[] validRows = new boolean[nRows];
+        Graphics g = paintBuffer.createGraphics();
+        try {
+            if (rowShift > 0) {
+                // scrolled down, the rows move up
+                g.copyArea(0, first.y + rowShift * first.height, paintBuffer.getWidth(), shiftedRows * first.height,
+                           0, -rowShift * first.height);
+                Arrays.fill(validRows, 0, shiftedRows, true);
+            } else {
+                g.copyArea(0, first.y, paintBuffer.getWidth(), shiftedRows * first.height,
+                           0, -rowShift * first.height);
+                Arrays.fill(validRows, -rowShift, nRows, true);
+            }
+        } finally {
+            g.dispose();
         }
+        return validRows;
     }
 
     /**
+     * Buffered painting: Remove the repaints requested for cellsContainer and
+     * its descendants (e.g. by a factory component whose content changed)
+     * that the RepaintManager hasn't carried out yet. The caller must paint
+     * the returned area itself, or know that its content is current.
      *
-     * @param modelIndex modelIndex
-     * @return the component (created by this list's component factory) that currently
-     *         displays the model element at index modelIndex. null if that element
-     *         isn't currently visible.
+     * @return the area covered by the removed repaints, relative to
+     *         cellsContainer
      */
-    public JComponent getComponentFor(int modelIndex) {
-        if (model != null && modelIndex < model.getSize()) {
-            int displayedCount = nRows * nCols;
-            int childIndex = modelIndex - getFirstDisplayedIdx();
-            if (childIndex >= 0 && childIndex < displayedCount) {
-                JPanel container = (JPanel) cellsContainer.getComponent(childIndex);
-                return (JComponent) container.getComponent(0);
+    private Rectangle takePendingCellsRepaints() {
+        Rectangle result = new Rectangle();
+        takePendingRepaints(RepaintManager.currentManager(cellsContainer), cellsContainer, result);
+        return result.intersection(new Rectangle(0, 0, cellsContainer.getWidth(), cellsContainer.getHeight()));
+    }
+
+    private void takePendingRepaints(RepaintManager repaintManager, Component c, Rectangle result) {
+        if (c instanceof JComponent) {
+            Rectangle dirty = repaintManager.getDirtyRegion((JComponent) c);
+            if (!dirty.isEmpty()) {
+                dirty = SwingUtilities.convertRectangle(c, dirty, cellsContainer);
+                if (result.isEmpty()) {
+                    result.setBounds(dirty);
+                } else {
+                    result.add(dirty);
+                }
+                repaintManager.markCompletelyClean((JComponent) c);
+            }
+        }
+        if (c instanceof Container) {
+            for (Component child : ((Container) c).getComponents()) {
+                takePendingRepaints(repaintManager, child, result);
             }
         }
-        return null;
     }
 
-    public void refresh() {
-        deleteUI();
-        reInitEmptyUI();
+    /**
+     * Renderer mode: The displayed cells changed. Drop the live cell (it'll
+     * be re-created on the next mouse move) and repaint.
+     */
+    private void rendererCellsChanged() {
+        releaseLiveCell();
+        cellsContainer.repaint();
     }
-    
-    public void repaintCells() {
-        if (model != null) {
-            int displayedCount = nRows * nCols;
-            for (int i = 0; i < displayedCount; i++) {
-                JComponent c = (JComponent) cellsContainer.getComponent(i);
-                if (c.getComponentCount() > 0) {
-                    c.getComponent(0).repaint();
-                }
-            }
+
+    /**
+     * 
+     * @param childIndex
+     * @return renderer mode: bounds of the cell at childIndex, relative to
+     *         cellsContainer
+     */
+    private Rectangle getRendererCellBounds(int childIndex) {
+        int w = cellsContainer.getWidth() / nCols, h = cellsContainer.getHeight() / nRows;
+        return new Rectangle((childIndex % nCols) * w, (childIndex / nCols) * h, w, h);
+    }
+
+    private void repaintRendererCell(int modelIndex) {
+        int childIndex = modelIndex - firstDisplayedIdx;
+        if (childIndex >= 0 && childIndex < nRows * nCols) {
+            cellsContainer.repaint(getRendererCellBounds(childIndex));
         }
     }
-    
-    public void repaintCell(int modelIndex) {
-        JComponent c = getComponentFor(modelIndex);
-        if (c != null) {
-            c.repaint();
+
+    /**
+     * 
+     * @param p
+     *            point relative to this list
+     * @return renderer mode: child index of the cell displaying a model
+     *         element at p, or -1
+     */
+    private int findRendererChildIndexAt(Point p) {
+        p = SwingUtilities.convertPoint(this, p, cellsContainer);
+        int w = cellsContainer.getWidth() / nCols, h = cellsContainer.getHeight() / nRows;
+        if (w <= 0 || h <= 0 || p.x < 0 || p.y < 0 || p.x >= w * nCols || p.y >= h * nRows) {
+            return -1;
         }
+        int childIndex = (p.y / h) * nCols + p.x / w;
+        return firstDisplayedIdx + childIndex < getModelSize() ? childIndex : -1;
     }
-    
-    protected void repaintCellSelectionAndDropLocationMarker(int modelIndex) {
-        JComponent comp = getComponentFor(modelIndex);
-        if (comp == null) {
+
+    /**
+     * Renderer mode: make the cell at p (relative to this list) the live
+     * cell.
+     * 
+     * @param p
+     */
+    private void updateLiveCell(Point p) {
+        int childIndex = (model == null || componentFactory == null) ? -1 : findRendererChildIndexAt(p);
+        if (childIndex == liveChildIndex) {
+            return;
+        }
+        releaseLiveCell();
+        if (childIndex == -1) {
             return;
         }
-        JPanel container = (JPanel) comp.getParent();
-        Object modelItem = model.getElementAt(modelIndex);
+        int modelIndex = firstDisplayedIdx + childIndex;
+        JPanel container = new JPanel(new GridLayout(1,1));
+        Object modelItem = getModelElement(modelIndex);
+        JComponent comp = createCellComponent(container, modelItem);
+        comp.setVisible(true);
         componentFactory.setSelectedStatusAndDropLocationMarker
-            (JGridList.this,
-             container,
-             modelItem,
-             selectionModel != null && selectionModel.isSelectedIndex(modelIndex),
-             getDropLocationMarkerForIndex(modelIndex),
-             comp);
+                (this,
+                 container,
+                 modelItem,
+                 selectionModel != null && selectionModel.isSelectedIndex(modelIndex),
+                 getDropLocationMarkerForIndex(modelIndex),
+                 comp);
+        liveCellContainer = container;
+        liveChildIndex = childIndex;
+        liveModelItem = modelItem;
+        Toolkit.getDefaultToolkit().addAWTEventListener(liveCellExitListener, AWTEvent.MOUSE_EVENT_MASK);
+        cellsContainer.add(container);
+        copyUiStateToCellContainer(container);
+        container.setBounds(getRendererCellBounds(childIndex));
+        container.validate();
+        container.repaint();
     }
 
-    public ListModel getModel() {
-        return model;
+    /**
+     * 
+     * @param source
+     * @param p
+     *            point relative to source
+     * @return renderer mode: whether p is within the live cell
+     */
+    private boolean isOverLiveCell(Component source, Point p) {
+        return liveCellContainer != null
+                && liveCellContainer.contains(SwingUtilities.convertPoint(source, p, liveCellContainer));
     }
 
-    public void setModel(ListModel model) {
-        if (model == this.model) { return; }
-        deleteUI();
-        if (this.model != null) {
-            this.model.removeListDataListener(modelChangeListener);
+    private void releaseLiveCell() {
+        if (liveCellContainer == null) {
+            return;
         }
-        this.model = model;
-        if (this.model != null) {
-            this.model.addListDataListener(modelChangeListener);
+        JPanel container = liveCellContainer;
+        liveCellContainer = null;
+        liveChildIndex = -1;
+        Toolkit.getDefaultToolkit().removeAWTEventListener(liveCellExitListener);
+        unbindCell(container);
+        if (componentFactory != null && container.getComponentCount() > 0) {
+            componentFactory.deleteComponent(this, container, liveModelItem, (JComponent) container.getComponent(0));
+        }
+        liveModelItem = null;
+        cellsContainer.remove(container);
+        cellsContainer.repaint(container.getBounds());
+    }
+
+    /**
+     * Direct hosting mode: stand-in for the container panel of a cell, passed
+     * to the component factory as the cell's parent. The component added to
+     * it (at most one, like to a GridLayout(1,1) container) actually becomes
+     * a child of cellsContainer. The slot itself is never displayed, but gets
+     * the cell's bounds from the {@link DirectCellsLayout}, and forwards
+     * repaint and revalidation requests to cellsContainer.
+     */
+    private class CellSlot extends JPanel {
+
+        private Component hosted;
+
+        CellSlot() {
+            super(null, false);
         }
-        reInitEmptyUI();
+
+        @Override
+        protected void addImpl(Component comp, Object constraints, int index) {
+            if (comp == hosted) {
+                return;
+            }
+            removeAll();
+            hosted = comp;
+            comp.setBounds(getBounds());
+            cellsContainer.add(comp);
+        }
+
+        @Override
+        public int getComponentCount() {
+            return hosted == null ? 0 : 1;
+        }
+
+        @Override
+        public Component getComponent(int n) {
+            if (n != 0 || hosted == null) {
+                throw new ArrayIndexOutOfBoundsException("No such child: " + n);
+            }
+            return hosted;
+        }
+
+        @Override
+        public Component[] getComponents() {
+            return hosted == null ? new Component[0] : new Component[] {hosted};
+        }
+
+        @Override
+        public void remove(int index) {
+            remove(getComponent(index));
+        }
+
+        @Override
+        public void remove(Component comp) {
+            if (comp != null && comp == hosted) {
+                hosted = null;
+                cellsContainer.remove(comp);
+                cellsContainer.repaint(getBounds());
+            }
+        }
+
+        @Override
+        public void removeAll() {
+            if (hosted != null) {
+                remove(hosted);
+            }
+        }
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+            if (cellsContainer != null) {
+                cellsContainer.repaint(tm, getX() + x, getY() + y, width, height);
+            }
+        }
+
+        @Override
+        public void revalidate() {
+            if (cellsContainer != null) {
+                cellsContainer.revalidate();
+            }
+        }
+
     }
 
-    private ListDataListener modelChangeListener = new ListDataListener() {
-        
-        // TODO: more efficient implementations
+    /**
+     * Direct hosting mode: lays out the cells in a grid, like a
+     * FixedGridLayout would lay out their containers, but setting the bounds
+     * of the slots and the hosted components directly.
+     */
+    private class DirectCellsLayout extends FixedGridLayout {
+
+        DirectCellsLayout(int rows, int cols) {
+            super(rows, cols);
+        }
 
         @Override
-        public void contentsChanged(ListDataEvent e) {
-            refresh();
+        protected Component[] getCellComponents(Container parent) {
+            Component[] result = new Component[cellSlots.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = cellSlots.get(i).hosted;
+            }
+            return result;
         }
 
         @Override
-        public void intervalAdded(ListDataEvent e) {
-            refresh();
+        public void layoutContainer(Container parent) {
+            for (int i = 0; i < cellSlots.size(); i++) {
+                cellSlots.get(i).setBounds(getCellBounds(parent, i));
+            }
+            super.layoutContainer(parent);
+        }
+
+    }
+
+    /**
+     * Container panel of a cell. The cell's bounds depend only on the grid
+     * geometry, never on its content, so a content change only needs to lay
+     * out the cell itself: the panel is a validate root, which keeps
+     * revalidate() calls of the factory's components from validating the
+     * whole list.
+     */
+    private class CellContainer extends JPanel {
+
+        CellContainer() {
+            super(new GridLayout(1,1));
         }
 
         @Override
-        public void intervalRemoved(ListDataEvent e) {
-            refresh();
+        public boolean isValidateRoot() {
+            return true;
         }
-        
-    };
-    
-    public GridListComponentFactory getComponentFactory() {
-        return componentFactory;
+
     }
 
     /**
-     * Sets or re-sets the JGridList's component factory, which is consulted
-     * to create the JComponents that make up the cells of the list. Setting
-     * the component factory while the list is already displayed will initiate
-     * a complete refresh of the UI, including a re-creation of all the cell
-     * components.
-     *
-     * @param componentFactory
+     * The panel containing the cells. Paints them in renderer mode, and via
+     * paintBuffer in buffered painting mode.
      */
-    public void setComponentFactory(GridListComponentFactory componentFactory) {
-        if (componentFactory == this.componentFactory) { return; }
-        deleteUI();
-        this.componentFactory = componentFactory;
-        reInitEmptyUI();
+    private class CellsContainer extends JPanel {
+
+        @Override
+        protected boolean isPaintingOrigin() {
+            // repaints of the cells must go through paint() to update the buffer
+            return bufferedPainting;
+        }
+
+        @Override
+        public boolean isOptimizedDrawingEnabled() {
+            return !bufferedPainting && super.isOptimizedDrawingEnabled();
+        }
+
+        @Override
+        public void paint(Graphics g) {
+            int w = getWidth(), h = getHeight();
+            if (!bufferedPainting || w <= 0 || h <= 0) {
+                super.paint(g);
+                return;
+            }
+            boolean[] validRows = bufferValidRows;
+            bufferValidRows = null;
+            if (paintBuffer == null || paintBuffer.getWidth() != w || paintBuffer.getHeight() != h) {
+                GraphicsConfiguration gc = getGraphicsConfiguration();
+                paintBuffer = (gc != null ? gc.createCompatibleImage(w, h) : new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB));
+                renderToBuffer(new Rectangle(0, 0, w, h));
+            } else {
+                Rectangle clip = g.getClipBounds();
+                if (clip == null) {
+                    clip = new Rectangle(0, 0, w, h);
+                }
+                if (validRows == null || validRows.length != nRows) {
+                    renderToBuffer(clip);
+                } else {
+                    // render the clip area except for the valid rows
+                    int y = clip.y, bottom = clip.y + clip.height;
+                    for (int row = 0; row < nRows; row++) {
+                        Rectangle r = getGridCellBounds(row * nCols);
+                        if (validRows[row] && r.y + r.height > y && r.y < bottom) {
+                            renderToBuffer(new Rectangle(clip.x, y, clip.width, r.y - y));
+                            y = r.y + r.height;
+                        }
+                    }
+                    renderToBuffer(new Rectangle(clip.x, y, clip.width, bottom - y));
+                }
+            }
+            g.drawImage(paintBuffer, 0, 0, null);
+        }
+
+        private void renderToBuffer(Rectangle area) {
+            if (area.width <= 0 || area.height <= 0) {
+                return;
+            }
+            Graphics bg = paintBuffer.createGraphics();
+            try {
+                bg.setClip(area.x, area.y, area.width, area.height);
+                super.paint(bg);
+            } finally {
+                bg.dispose();
+            }
+        }
+
+        @Override
+        public boolean isValidateRoot() {
+            // its layout doesn't depend on the cells' content (in direct
+            // hosting mode, the factory components are its children)
+            return true;
+        }
+
+        @Override
+        public void doLayout() {
+            super.doLayout();
+            if (liveCellContainer != null) {
+                liveCellContainer.setBounds(getRendererCellBounds(liveChildIndex));
+                liveCellContainer.validate();
+            }
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            if (cellRenderer == null || model == null) {
+                return;
+            }
+            Rectangle clip = g.getClipBounds();
+            int displayedCount = nRows * nCols;
+            int modelSize = getModelSize();
+            for (int childIndex = 0; childIndex < displayedCount; childIndex++) {
+                int modelIndex = firstDisplayedIdx + childIndex;
+                if (modelIndex >= modelSize) {
+                    break;
+                }
+                if (childIndex == liveChildIndex) {
+                    continue;
+                }
+                Rectangle r = getRendererCellBounds(childIndex);
+                if (clip != null && !clip.intersects(r)) {
+                    continue;
+                }
+                Component c = cellRenderer.getGridListCellRendererComponent
+                        (JGridList.this,
+                         getModelElement(modelIndex),
+                         modelIndex,
+                         selectionModel != null && selectionModel.isSelectedIndex(modelIndex),
+                         getDropLocationMarkerForIndex(modelIndex));
+                rendererPane.paintComponent(g, c, this, r.x, r.y, r.width, r.height, true);
+            }
+        }
+
     }
 
     /**
@@ -429,13 +1692,15 @@ public class JGridList extends JPanel {
         //this.firstDisplayedIdx = newValue;
         //reInitEmptyUI();
         
+        boolean[] validRows = bufferedPainting ? scrollPaintBuffer(newValue - firstDisplayedIdx) : null;
         if (null != model) {
             int displayedCount = getRowCount() * getColumnCount();
+            loadWindow(newValue, displayedCount);
+            int modelSize = getModelSize();
             if (componentFactory.canReuseComponents()) {
                 for (int i = 0; i < displayedCount; i++) {
                     int prevModelIndex = firstDisplayedIdx + i;
                     int modelIndex = newValue + i;
-                    int modelSize = model.getSize();
                     setComponent(modelIndex < modelSize ? modelIndex : -1,
                                  prevModelIndex < modelSize ? prevModelIndex : -1,
                                  i);
@@ -458,9 +1723,22 @@ public class JGridList extends JPanel {
             }
         }
         this.firstDisplayedIdx = newValue;
+        updateObservedItems();
         updateScrollbar();
-        revalidate();
-        validate();
+        validateCells();
+        if (validRows != null) {
+            // all rows moved on screen, but only the new ones need rendering;
+            // that also covers the repaints requested by moving or rebinding
+            // the cells. Painted right away, so changes requested later can't
+            // be mistaken for shifted content
+            takePendingCellsRepaints();
+            bufferValidRows = validRows;
+            try {
+                cellsContainer.paintImmediately(0, 0, cellsContainer.getWidth(), cellsContainer.getHeight());
+            } finally {
+                bufferValidRows = null;
+            }
+        }
     }
 
     /**
@@ -520,8 +1798,9 @@ public class JGridList extends JPanel {
 
         int oldDisplayedCount = getRowCount() * getColumnCount();
         int newDisplayedCount = newNRows * newNCols;
-        cellsContainer.setLayout(new GridLayout(newNRows, newNCols));
+        cellsContainer.setLayout(createCellsLayout(newNRows, newNCols));
         if (null != model) {
+            loadWindow(firstDisplayedIdx, newDisplayedCount);
             if (newDisplayedCount > oldDisplayedCount) {
                 for (int i = 0; i < (newDisplayedCount - oldDisplayedCount); i++) {
                     addComponent(firstDisplayedIdx + oldDisplayedCount + i,
@@ -537,9 +1816,11 @@ public class JGridList extends JPanel {
         }
         this.nRows = newNRows;
         this.nCols = newNCols;
+        updateObservedItems();
         updateScrollbar();
         revalidate();
         validate();
+        checkCellSizeChanged();
     }
 
     public ListSelectionModel getSelectionModel() {
@@ -548,17 +1829,87 @@ public class JGridList extends JPanel {
 
     public void setSelectionModel(ListSelectionModel selectionModel) {
         if (selectionModel == this.selectionModel) { return; }
-        if (this.selectionModel != null) {
-            this.selectionModel.removeListSelectionListener(listSelectionListener);
-        }
+        unregisterListSelectionListener();
         deleteUI();
         this.selectionModel = selectionModel;
-        if (this.selectionModel != null) {
-            this.selectionModel.addListSelectionListener(listSelectionListener);
-        }
+        registerListSelectionListener();
         reInitEmptyUI();
     }
 
+    private void registerListSelectionListener() {
+        if (selectionModel != null) {
+            registeredListSelectionListener = weakListeners
+                    ? new WeakListeners.WeakListSelectionListener(listSelectionListener, selectionModel)
+                    : listSelectionListener;
+            selectionModel.addListSelectionListener(registeredListSelectionListener);
+        }
+    }
+
+    private void unregisterListSelectionListener() {
+        if (selectionModel != null && registeredListSelectionListener != null) {
+            selectionModel.removeListSelectionListener(registeredListSelectionListener);
+        }
+        registeredListSelectionListener = null;
+    }
+
+    /**
+     * 
+     * @return whether the listeners this list registers with its model,
+     *         selection model and {@link ObservableListItem displayed items}
+     *         only reference the list weakly
+     */
+    public boolean isWeakListeners() {
+        return weakListeners;
+    }
+
+    /**
+     * Sets whether the listeners this list registers with its model,
+     * selection model and {@link ObservableListItem displayed items} only
+     * reference the list weakly (see {@link WeakListeners}). In this mode,
+     * a list that's no longer referenced from anywhere else can be garbage
+     * collected even if its models are still in use, e.g. because they're
+     * shared with other, longer-lived lists. Default is false.
+     * <p>
+     * Alternatively, or additionally, call {@link #dispose()} when the list
+     * is no longer needed.
+     * 
+     * @param weakListeners
+     */
+    public void setWeakListeners(boolean weakListeners) {
+        if (weakListeners == this.weakListeners) { return; }
+        unregisterModelChangeListener();
+        unregisterListSelectionListener();
+        for (ObservableListItem item : observedItems.keySet()) {
+            item.removeChangeListener(getRegisteredItemChangeListener());
+        }
+        this.weakListeners = weakListeners;
+        weakItemChangeListener = weakListeners ? new WeakListeners.WeakItemChangeListener(itemChangeListener) : null;
+        registerModelChangeListener();
+        registerListSelectionListener();
+        for (ObservableListItem item : observedItems.keySet()) {
+            item.addChangeListener(getRegisteredItemChangeListener());
+        }
+    }
+
+    /**
+     * Releases all cells (calling the component factory's
+     * {@link GridListComponentFactory#deleteComponent(JGridList, JPanel, Object, JComponent)
+     * deleteComponent} for each of them) and deregisters this list from its
+     * model, selection model and displayed items, so that the list doesn't
+     * keep its heavy cell contents alive and isn't kept alive by the models.
+     * Equivalent to setting the model and the selection model to null.
+     * <p>
+     * Should be called when a list whose models outlive it is no longer
+     * needed.
+     */
+    public void dispose() {
+        cellSizeSettleTimer.stop();
+        // also unregisters the toolkit listener referencing this list
+        releaseLiveCell();
+        setModel(null);
+        setSelectionModel(null);
+    }
+
     public Object[] getSelectedValues() {
         ListSelectionModel sm = getSelectionModel();
         int minSI = sm.getMinSelectionIndex();
@@ -567,7 +1918,7 @@ public class JGridList extends JPanel {
         int n = 0;
         for (int i = minSI; i <= maxSI; i++) {
             if (sm.isSelectedIndex(i)) {
-                tmp[n++] = getModel().getElementAt(i);
+                tmp[n++] = getModelElement(i);
             }
         }
         Object[] result = new Object[n];
@@ -596,13 +1947,18 @@ public class JGridList extends JPanel {
         @Override
         public void valueChanged(ListSelectionEvent e) {
             // refresh();  // more efficient:
-            if (null != model) {
+            if (cellRenderer != null) {
+                cellsContainer.repaint();
+                if (liveCellContainer != null) {
+                    repaintCellSelectionAndDropLocationMarker(firstDisplayedIdx + liveChildIndex);
+                }
+            } else if (null != model) {
                 int displayedCount = getRowCount() * getColumnCount();
                 for (int childIdx = 0; childIdx < displayedCount; childIdx++) {
                     int modelIdx = firstDisplayedIdx + childIdx;
-                    if (modelIdx >= 0 && modelIdx < model.getSize()) {
-                        Object modelItem = model.getElementAt(modelIdx);
-                        JPanel container = (JPanel) cellsContainer.getComponent(childIdx);
+                    if (modelIdx >= 0 && modelIdx < getModelSize()) {
+                        Object modelItem = getModelElement(modelIdx);
+                        JPanel container = getCellContainer(childIdx);
                         JComponent comp = (JComponent) container.getComponent(0);
                         componentFactory.setSelectedStatusAndDropLocationMarker
                             (JGridList.this,
@@ -645,7 +2001,7 @@ public class JGridList extends JPanel {
         if (null == scrollBar) {
             return;
         }
-        if (null == model || model.getSize() == 0) {
+        if (null == model || getModelSize() == 0) {
             internalScrollbarValueIsAdjusting = true;
             scrollBar.getModel().setRangeProperties(0, 0, 0, 0, false);
             internalScrollbarValueIsAdjusting = false;
@@ -655,7 +2011,7 @@ public class JGridList extends JPanel {
         if (! scrollBar.isEnabled()) {
             scrollBar.setEnabled(true);
         }
-        int size = model.getSize();
+        int size = getModelSize();
         int firstDispIdx = getFirstDisplayedIdx();
         int displayedCount = getRowCount() * getColumnCount();
         int lastDispIdx = firstDispIdx + displayedCount - 1;
@@ -697,7 +2053,7 @@ public class JGridList extends JPanel {
         if (null == model) {
             return;
         }
-        if (idx >= 0 && idx < model.getSize()) {
+        if (idx >= 0 && idx < getModelSize()) {
             int displayedCount = getRowCount() * getColumnCount();
             int lastDispIdx = getFirstDisplayedIdx() + displayedCount - 1;
             int newFirstDispIdx = -1;
@@ -726,6 +2082,10 @@ public class JGridList extends JPanel {
     
 
     public int findModelIndexAt(Point p) {
+        if (cellRenderer != null) {
+            int childIndex = findRendererChildIndexAt(p);
+            return childIndex == -1 ? -1 : firstDisplayedIdx + childIndex;
+        }
         Component child = findComponentAt(p);
         if (null == child) {
             return -1;
@@ -741,18 +2101,28 @@ public class JGridList extends JPanel {
         }
         
         int childIndex = -1;
-        Component[] children = cellsContainer.getComponents();
-        for (int i = 0; i < children.length; ++i) {
-            if (child == children[i]) {
-                childIndex = i;
-                break;
+        if (directCellHosting) {
+            // child is a factory component
+            for (int i = 0; i < cellSlots.size(); ++i) {
+                if (cellSlots.get(i).hosted == child) {
+                    childIndex = i;
+                    break;
+                }
+            }
+        } else {
+            Component[] children = cellsContainer.getComponents();
+            for (int i = 0; i < children.length; ++i) {
+                if (child == children[i]) {
+                    childIndex = i;
+                    break;
+                }
             }
         }
         if (childIndex == -1) {
             return -1;
         }
         int modelIndex = childIndex + firstDisplayedIdx;
-        return modelIndex < model.getSize() ? modelIndex : -1;
+        return modelIndex < getModelSize() ? modelIndex : -1;
     }
     
     //// Drag&Drop support
@@ -827,8 +2197,8 @@ public class JGridList extends JPanel {
         int col = Math.min(nCols-1, p.x / boxWidth);
         int row = Math.min(nRows-1, p.y / boxHeight);
         int idx = getFirstDisplayedIdx() + row * nCols + col;
-        if (idx >= getModel().getSize()) {
-            return new DropLocation(getModel().getSize(), true, p);
+        if (idx >= getModelSize()) {
+            return new DropLocation(getModelSize(), true, p);
         }
         double boxRelativeX = ((double)p.x - col*boxWidth) / boxWidth;
         if (boxRelativeX < DROPLOC_INSERT_RELATIVE_X) {
@@ -928,6 +2298,10 @@ public class JGridList extends JPanel {
     @Override
     protected void processMouseEvent(MouseEvent e) {
         super.processMouseEvent(e);
+        // also received when the mouse enters the live component
+        if (cellRenderer != null && e.getID() == MouseEvent.MOUSE_EXITED && !isOverLiveCell(this, e.getPoint())) {
+            releaseLiveCell();
+        }
         if (e.isConsumed()) {
             return;
         }
@@ -947,6 +2321,9 @@ public class JGridList extends JPanel {
     @Override
     protected void processMouseMotionEvent(MouseEvent e) {
         super.processMouseMotionEvent(e);
+        if (cellRenderer != null && e.getID() == MouseEvent.MOUSE_MOVED) {
+            updateLiveCell(e.getPoint());
+        }
         if (e.isConsumed()) {
             return;
         }
@@ -996,6 +2373,11 @@ public class JGridList extends JPanel {
                 if (e.getButton() != MouseEvent.BUTTON1) { return; }
                 int clickedModelIndex = findModelIndexAt(e.getPoint());
                 if (clickedModelIndex != -1) {
+                    Object clickedItem = getModelElement(clickedModelIndex);
+                    if (clickedItem instanceof GroupedListModel.Group && getModel() instanceof GroupedListModel) {
+                        groupHeaderClicked(clickedModelIndex, (GroupedListModel.Group) clickedItem);
+                        return;
+                    }
                     if ((e.getModifiersEx() & MouseEvent.CTRL_DOWN_MASK) == 0) {
                         getSelectionModel().setSelectionInterval(clickedModelIndex, clickedModelIndex);
                     } else {
@@ -1029,6 +2411,20 @@ public class JGridList extends JPanel {
         }
     }
     
+    /**
+     * Called when the user clicked the header cell of a group of a
+     * {@link GroupedListModel}. Default implementation toggles the group's
+     * collapsed state. Subclasses may override.
+     *
+     * @param modelIndex
+     *            model index of the header
+     * @param group
+     *            the group
+     */
+    protected void groupHeaderClicked(int modelIndex, GroupedListModel.Group group) {
+        ((GroupedListModel) getModel()).toggleCollapsed(group);
+    }
+
     protected Action upAction = new AbstractAction() {
         @Override
         public void actionPerformed(ActionEvent e) {
@@ -1042,7 +2438,7 @@ public class JGridList extends JPanel {
         int idx = getSelectionModel().getLeadSelectionIndex();
         if (idx != -1) {
             idx += shift;
-            if (idx >= 0 && idx < model.getSize()) {
+            if (idx >= 0 && idx < getModelSize()) {
                 getSelectionModel().setSelectionInterval(idx, idx);
             }
         }
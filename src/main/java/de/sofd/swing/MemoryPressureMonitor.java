@@ -0,0 +1,191 @@
+package de.sofd.swing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * Asks registered {@link Shrinkable Shrinkables} (usually
+ * {@link ContentCache ContentCaches}) to shrink when the heap is nearly full.
+ * <p>
+ * Uses the usage thresholds of the JVM's heap {@link MemoryPoolMXBean memory
+ * pools}: once {@link #start() started}, the monitor sets each heap pool's
+ * collection usage threshold (or, if the pool doesn't support that, its usage
+ * threshold) to a fraction of the pool's maximum size, and when the JVM
+ * reports that the threshold has been exceeded, it shrinks all registered
+ * Shrinkables to their target fraction. This allows giving the caches
+ * budgets that suit large heaps, without risking OutOfMemoryErrors on small
+ * ones.
+ * <p>
+ * Shrinkables are referenced weakly, so registering a cache doesn't keep it
+ * alive. The shrinking happens on the JVM's notification thread.
+ */
+public class MemoryPressureMonitor {
+
+    private static MemoryPressureMonitor defaultInstance;
+
+    private final double thresholdFraction;
+    private final double targetFraction;
+    private final Set<Shrinkable> shrinkables = Collections.newSetFromMap(new WeakHashMap<Shrinkable, Boolean>());
+    private final List<MemoryPoolMXBean> monitoredPools = new ArrayList<MemoryPoolMXBean>();
+    private boolean started = false;
+    private volatile long pressureCount = 0;
+
+    private final NotificationListener notificationListener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            String type = notification.getType();
+            if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                    || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                pressureCount++;
+                shrinkAll();
+            }
+        }
+    };
+
+    /**
+     *
+     * @param thresholdFraction
+     *            fraction of a heap pool's maximum size at which the pool is
+     *            considered nearly full, e.g. 0.8
+     * @param targetFraction
+     *            fraction of their budget that Shrinkables are shrunk to
+     *            then, e.g. 0.25
+     */
+    public MemoryPressureMonitor(double thresholdFraction, double targetFraction) {
+        if (thresholdFraction <= 0 || thresholdFraction >= 1) {
+            throw new IllegalArgumentException("thresholdFraction must be between 0 and 1: " + thresholdFraction);
+        }
+        if (targetFraction < 0 || targetFraction > 1) {
+            throw new IllegalArgumentException("targetFraction must be between 0 and 1: " + targetFraction);
+        }
+        this.thresholdFraction = thresholdFraction;
+        this.targetFraction = targetFraction;
+    }
+
+    /**
+     *
+     * @return a shared, started instance with a threshold of 80% and a
+     *         target of 25%
+     */
+    public static synchronized MemoryPressureMonitor getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new MemoryPressureMonitor(0.8, 0.25);
+            defaultInstance.start();
+        }
+        return defaultInstance;
+    }
+
+    public double getThresholdFraction() {
+        return thresholdFraction;
+    }
+
+    public double getTargetFraction() {
+        return targetFraction;
+    }
+
+    public void addShrinkable(Shrinkable s) {
+        synchronized (shrinkables) {
+            shrinkables.add(s);
+        }
+    }
+
+    public void removeShrinkable(Shrinkable s) {
+        synchronized (shrinkables) {
+            shrinkables.remove(s);
+        }
+    }
+
+    /**
+     * Shrink all registered Shrinkables to the target fraction now.
+     */
+    public void shrinkAll() {
+        List<Shrinkable> toShrink;
+        synchronized (shrinkables) {
+            toShrink = new ArrayList<Shrinkable>(shrinkables);
+        }
+        for (Shrinkable s : toShrink) {
+            s.shrink(targetFraction);
+        }
+    }
+
+    /**
+     *
+     * @return number of times the heap was reported as nearly full since
+     *         the monitor was created
+     */
+    public long getPressureCount() {
+        return pressureCount;
+    }
+
+    /**
+     * Set the heap pools' thresholds and start listening for threshold
+     * notifications. Thresholds set by other code are overwritten.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            MemoryUsage usage = pool.getUsage();
+            if (usage == null || usage.getMax() <= 0) {
+                continue;
+            }
+            long threshold = (long) (usage.getMax() * thresholdFraction);
+            if (pool.isCollectionUsageThresholdSupported()) {
+                // usage after GC is the better indicator, since it doesn't
+                // include garbage
+                pool.setCollectionUsageThreshold(threshold);
+                monitoredPools.add(pool);
+            } else if (pool.isUsageThresholdSupported()) {
+                pool.setUsageThreshold(threshold);
+                monitoredPools.add(pool);
+            }
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(notificationListener, null, null);
+        started = true;
+    }
+
+    /**
+     * Stop listening, and reset the thresholds set by {@link #start()}.
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(notificationListener);
+        } catch (ListenerNotFoundException e) {
+            // not registered, nothing to do
+        }
+        for (MemoryPoolMXBean pool : monitoredPools) {
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold(0);
+            } else {
+                pool.setUsageThreshold(0);
+            }
+        }
+        monitoredPools.clear();
+        started = false;
+    }
+
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+}
@@ -0,0 +1,29 @@
+package de.sofd.swing;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Optional interface for list model elements that can notify listeners when
+ * their own state (e.g. an annotation count displayed in their cell) has
+ * changed, without the model firing a
+ * {@link javax.swing.event.ListDataEvent}.
+ * <p>
+ * {@link JGridList} registers a listener with those of its displayed elements
+ * that implement this interface, and deregisters it again when the elements
+ * are scrolled out of view. When an element notifies, only the cell(s)
+ * displaying that element are re-created (or re-initialized, if the component
+ * factory {@link GridListComponentFactory#canReuseComponents() reuses
+ * components}) and repainted.
+ * <p>
+ * The {@link ChangeEvent ChangeEvents} passed to the listeners must have the
+ * item itself as their source. Items may fire from any thread; JGridList
+ * handles the notification on the event dispatch thread.
+ */
+public interface ObservableListItem {
+
+    void addChangeListener(ChangeListener l);
+
+    void removeChangeListener(ChangeListener l);
+
+}
@@ -0,0 +1,373 @@
+package de.sofd.swing;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * {@link javax.swing.ListModel} of a fixed, known size whose elements are
+ * loaded lazily in fixed-size pages on a background {@link Executor}. Meant
+ * for displaying very large collections (e.g. archive listings) in a
+ * {@link JGridList} or JList without materializing them in memory on the
+ * EDT.
+ * <p>
+ * Until the page containing a requested element has been loaded,
+ * {@link #getElementAt(int)} returns a lightweight {@link Placeholder} (see
+ * {@link #createPlaceholder(int)}) and schedules loading of the page. When
+ * the page arrives, it is stored in an LRU cache of recently used pages and
+ * a contentsChanged event is fired for exactly the loaded index range.
+ * <p>
+ * If loading a page fails, the failure is recorded (see
+ * {@link #getLoadError(int)}), the page's elements remain placeholders in a
+ * failed state, and a contentsChanged event is fired for the page's index
+ * range. Failed pages aren't requested again until {@link #retry(int)} or
+ * {@link #retryFailedPages()} is called.
+ * <p>
+ * The model must be accessed from the EDT only, like any other Swing model.
+ * The {@link PageLoader} is called on the executor's threads. A model that
+ * was created without an executor loads the pages on its own background
+ * thread; call {@link #dispose()} when it's no longer needed to stop that.
+ * <p>
+ * The maximum number of cached pages should be large enough to hold all the
+ * pages that are displayed at the same time; otherwise, displayed pages may
+ * be evicted and reloaded over and over.
+ */
+public class PagedListModel extends AbstractListModel implements BulkListModel {
+
+    /**
+     * Loads pages of elements for a {@link PagedListModel}. Called on the
+     * model's executor, never on the EDT.
+     */
+    public static interface PageLoader {
+        /**
+         * Load the elements in the index range [fromIndex, toIndex).
+         *
+         * @param fromIndex
+         * @param toIndex
+         * @return the elements; array must have a length of toIndex - fromIndex
+         * @throws Exception
+         *             if loading failed. The page is marked as failed then
+         *             (see {@link PagedListModel#getLoadError(int)}).
+         */
+        Object[] loadPage(int fromIndex, int toIndex) throws Exception;
+    }
+
+    /**
+     * Default placeholder item returned for elements whose page hasn't been
+     * loaded yet.
+     */
+    public static class Placeholder {
+        private final int index;
+        private final Exception loadError;
+
+        public Placeholder(int index) {
+            this(index, null);
+        }
+
+        public Placeholder(int index, Exception loadError) {
+            this.index = index;
+            this.loadError = loadError;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         *
+         * @return the exception that loading the element's page failed
+         *         with, or null if the page is still being loaded
+         */
+        public Exception getLoadError() {
+            return loadError;
+        }
+
+        public boolean isFailed() {
+            return loadError != null;
+        }
+
+        @Override
+        public String toString() {
+            return loadError == null ? "..." : "!";
+        }
+    }
+
+    private final int size;
+    private final int pageSize;
+    private final PageLoader loader;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private boolean disposed = false;
+    private final LinkedHashMap<Integer, Object[]> pages;
+    private final Set<Integer> pendingPages = new HashSet<Integer>();
+    private final Map<Integer, Exception> failedPages = new HashMap<Integer, Exception>();
+
+    /**
+     * Incremented by {@link #invalidate()} so pages requested before the
+     * invalidation are discarded when they arrive.
+     */
+    private int generation = 0;
+
+    /**
+     *
+     * @param size
+     *            number of elements in the model
+     * @param pageSize
+     *            number of elements per page
+     * @param maxCachedPages
+     *            maximum number of loaded pages kept in memory
+     * @param loader
+     *            loader used for loading the pages
+     * @param executor
+     *            executor to run the loader on
+     */
+    public PagedListModel(int size, int pageSize, int maxCachedPages, PageLoader loader, Executor executor) {
+        this(size, pageSize, maxCachedPages, loader, executor, false);
+    }
+
+    /**
+     * Like {@link #PagedListModel(int, int, int, PageLoader, Executor)}, with
+     * a single daemon background thread as the executor, which is stopped by
+     * {@link #dispose()}.
+     */
+    public PagedListModel(int size, int pageSize, int maxCachedPages, PageLoader loader) {
+        this(size, pageSize, maxCachedPages, loader, createDefaultExecutor(), true);
+    }
+
+    private PagedListModel(int size, int pageSize, final int maxCachedPages, PageLoader loader, Executor executor,
+            boolean ownsExecutor) {
+        if (size < 0 || pageSize <= 0 || maxCachedPages <= 0) {
+            throw new IllegalArgumentException("size must be >= 0, pageSize and maxCachedPages must be > 0");
+        }
+        this.size = size;
+        this.pageSize = pageSize;
+        this.loader = loader;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.pages = new LinkedHashMap<Integer, Object[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "PagedListModel loader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        Object[] page = getPageOrRequest(index / pageSize);
+        return page != null ? page[index % pageSize] : createPlaceholder(index);
+    }
+
+    @Override
+    public void getElements(int fromIndex, int toIndex, Object[] dest) {
+        if (fromIndex < 0 || toIndex > size) {
+            throw new IndexOutOfBoundsException("" + fromIndex + ".." + toIndex);
+        }
+        int i = fromIndex;
+        while (i < toIndex) {
+            int pageNo = i / pageSize;
+            int pageEnd = Math.min(toIndex, (pageNo + 1) * pageSize);
+            Object[] page = getPageOrRequest(pageNo);
+            for (; i < pageEnd; i++) {
+                dest[i - fromIndex] = (page != null ? page[i % pageSize] : createPlaceholder(i));
+            }
+        }
+    }
+
+    /**
+     *
+     * @param index
+     * @return true if the element at index <i>index</i> is currently loaded
+     *         (i.e., {@link #getElementAt(int)} wouldn't return a placeholder)
+     */
+    public boolean isLoaded(int index) {
+        return pages.containsKey(index / pageSize);
+    }
+
+    /**
+     * Tell whether an element returned by this model is a placeholder for an
+     * element that hasn't been loaded yet. Must be overridden along with
+     * {@link #createPlaceholder(int)}.
+     *
+     * @param element
+     * @return
+     */
+    public boolean isPlaceholder(Object element) {
+        return element instanceof Placeholder;
+    }
+
+    /**
+     * Create the placeholder item to be returned for index <i>index</i> while
+     * its page is being loaded, or after loading it failed (see
+     * {@link #getLoadError(int)}). Subclasses may override to return
+     * something that's more suitable for their component factories or
+     * renderers; they should also override {@link #isPlaceholder(Object)} in
+     * that case.
+     *
+     * @param index
+     * @return
+     */
+    protected Object createPlaceholder(int index) {
+        return new Placeholder(index, getLoadError(index));
+    }
+
+    /**
+     *
+     * @param index
+     * @return the exception that loading the page containing the element at
+     *         index <i>index</i> failed with, or null if the page hasn't
+     *         failed
+     */
+    public Exception getLoadError(int index) {
+        return failedPages.get(index / pageSize);
+    }
+
+    /**
+     * Clear the failure of the page containing the element at index
+     * <i>index</i>, if any, so the page is requested again the next time one
+     * of its elements is accessed. Fires a contentsChanged event for the
+     * page's index range.
+     *
+     * @param index
+     */
+    public void retry(int index) {
+        int pageNo = index / pageSize;
+        if (failedPages.remove(pageNo) != null) {
+            firePageChanged(pageNo);
+        }
+    }
+
+    /**
+     * {@link #retry(int) Retry} all failed pages.
+     */
+    public void retryFailedPages() {
+        Integer[] pageNos = failedPages.keySet().toArray(new Integer[failedPages.size()]);
+        failedPages.clear();
+        for (int pageNo : pageNos) {
+            firePageChanged(pageNo);
+        }
+    }
+
+    private void firePageChanged(int pageNo) {
+        int fromIndex = pageNo * pageSize;
+        int toIndex = Math.min(size, fromIndex + pageSize);
+        fireContentsChanged(this, fromIndex, toIndex - 1);
+    }
+
+    /**
+     * Drop all loaded pages, e.g. because the underlying data changed. Pages
+     * that are currently being loaded are discarded when they arrive. Fires a
+     * contentsChanged event for the whole model, so displayed elements will
+     * be requested (and thus reloaded) again.
+     */
+    public void invalidate() {
+        generation++;
+        pages.clear();
+        pendingPages.clear();
+        failedPages.clear();
+        if (size > 0) {
+            fireContentsChanged(this, 0, size - 1);
+        }
+    }
+
+    /**
+     * Stop loading pages: shut down the background thread if the model
+     * created it itself, and discard pages that are still being loaded.
+     * Loaded pages remain available; the elements of the other pages remain
+     * placeholders.
+     */
+    public void dispose() {
+        disposed = true;
+        generation++;
+        pendingPages.clear();
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    private Object[] getPageOrRequest(final int pageNo) {
+        Object[] page = pages.get(pageNo);
+        if (page != null || disposed || pendingPages.contains(pageNo) || failedPages.containsKey(pageNo)) {
+            return page;
+        }
+        pendingPages.add(pageNo);
+        final int requestGeneration = generation;
+        final int fromIndex = pageNo * pageSize;
+        final int toIndex = Math.min(size, fromIndex + pageSize);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Object[] loaded = null;
+                Exception error = null;
+                try {
+                    loaded = loader.loadPage(fromIndex, toIndex);
+                } catch (Exception e) {
+                    error = e;
+                }
+                final Object[] result = loaded;
+                final Exception resultError = error;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        pageLoaded(pageNo, result, resultError, requestGeneration);
+                    }
+                });
+            }
+        });
+        return null;
+    }
+
+    private void pageLoaded(int pageNo, Object[] page, Exception error, int requestGeneration) {
+        if (requestGeneration != generation) {
+            return;
+        }
+        pendingPages.remove(pageNo);
+        int fromIndex = pageNo * pageSize;
+        int toIndex = Math.min(size, fromIndex + pageSize);
+        if (error == null && page != null && page.length != toIndex - fromIndex) {
+            error = new IllegalStateException("PageLoader returned " + page.length +
+                                              " elements for a page of size " + (toIndex - fromIndex));
+        } else if (error == null && page == null) {
+            error = new IllegalStateException("PageLoader returned null");
+        }
+        if (error != null) {
+            failedPages.put(pageNo, error);
+        } else {
+            pages.put(pageNo, page);
+        }
+        fireContentsChanged(this, fromIndex, toIndex - 1);
+    }
+
+}
@@ -0,0 +1,281 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Pool of cell content (e.g. decoded thumbnails) shared between several
+ * {@link JGridList JGridLists} and/or factories that display the same model
+ * items, so each piece of content is produced and held in memory only once.
+ * <p>
+ * Content is identified by a key. A cell that needs the content for a key
+ * {@link #acquire(Object, Callable, Executor) acquires} a {@link Reference}
+ * to it, and {@link Reference#release() releases} the reference when it's
+ * unbound. The first acquisition of a key starts loading the content; later
+ * acquisitions, from any list, share the load that's in progress or its
+ * result. When the last reference to a key is released, the content is
+ * dropped from the pool (and a load still in progress is cancelled if it
+ * hasn't started yet). Content that should survive that for a while can be
+ * kept in a {@link ContentCache} additionally.
+ * <p>
+ * Thread-safe.
+ *
+ * @param <K>
+ *            key type
+ * @param <V>
+ *            content type
+ */
+public class SharedContentPool<K, V> {
+
+    private final Map<K, Entry> entries = new HashMap<K, Entry>();
+
+    private long loadCount = 0;
+    private long sharedCount = 0;
+
+    /**
+     * Reference of one cell to pooled content.
+     *
+     * @param <V>
+     */
+    public static interface Reference<V> {
+
+        /**
+         *
+         * @return whether the content has been loaded, or loading failed
+         */
+        boolean isDone();
+
+        /**
+         *
+         * @return the content if it has been loaded, otherwise (still loading,
+         *         or failed) null
+         */
+        V getIfDone();
+
+        /**
+         * Wait for the content.
+         *
+         * @return the content
+         * @throws ExecutionException
+         *             if loading failed
+         * @throws InterruptedException
+         */
+        V get() throws ExecutionException, InterruptedException;
+
+        /**
+         * Run callback once the content has been loaded or loading has
+         * failed: immediately on the calling thread if that's already the
+         * case, otherwise on the thread that did the loading. Not run if
+         * the reference has been released by then.
+         *
+         * @param callback
+         */
+        void whenDone(Runnable callback);
+
+        /**
+         * Give up this reference. Subsequent calls do nothing.
+         */
+        void release();
+    }
+
+    private class Entry extends FutureTask<V> {
+        final K key;
+        int refCount = 0;
+        private List<Runnable> callbacks;
+
+        Entry(K key, Callable<V> loader) {
+            super(loader);
+            this.key = key;
+        }
+
+        void addCallback(Runnable callback) {
+            synchronized (this) {
+                if (!isDone()) {
+                    if (callbacks == null) {
+                        callbacks = new ArrayList<Runnable>(2);
+                    }
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            callback.run();
+        }
+
+        @Override
+        protected void done() {
+            List<Runnable> toRun;
+            synchronized (this) {
+                toRun = callbacks;
+                callbacks = null;
+            }
+            if (toRun != null) {
+                for (Runnable r : toRun) {
+                    r.run();
+                }
+            }
+        }
+    }
+
+    private class ReferenceImpl implements Reference<V> {
+        private final Entry entry;
+        private volatile boolean released = false;
+
+        ReferenceImpl(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public boolean isDone() {
+            return entry.isDone();
+        }
+
+        @Override
+        public V getIfDone() {
+            if (!entry.isDone() || entry.isCancelled()) {
+                return null;
+            }
+            try {
+                return entry.get();
+            } catch (ExecutionException e) {
+                return null;
+            } catch (InterruptedException e) {
+                // can't happen, the entry is done
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        @Override
+        public V get() throws ExecutionException, InterruptedException {
+            return entry.get();
+        }
+
+        @Override
+        public void whenDone(final Runnable callback) {
+            entry.addCallback(new Runnable() {
+                @Override
+                public void run() {
+                    if (!released) {
+                        callback.run();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void release() {
+            synchronized (SharedContentPool.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                entry.refCount--;
+                if (entry.refCount > 0) {
+                    return;
+                }
+                entries.remove(entry.key);
+            }
+            entry.cancel(false);
+        }
+    }
+
+    /**
+     * Acquire a reference to the content for key. If the pool doesn't hold
+     * that content yet, loader is submitted to executor to load it.
+     *
+     * @param key
+     * @param loader
+     *            produces the content. Should return non-null content, or
+     *            throw an exception if the content can't be produced
+     * @param executor
+     *            executor to run loader on
+     * @return the reference, which the caller must release when it no longer
+     *         needs the content
+     */
+    public Reference<V> acquire(K key, Callable<V> loader, Executor executor) {
+        Entry entry;
+        boolean created = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, loader);
+                entries.put(key, entry);
+                loadCount++;
+                created = true;
+            } else {
+                sharedCount++;
+            }
+            entry.refCount++;
+        }
+        if (created) {
+            executor.execute(entry);
+        }
+        return new ReferenceImpl(entry);
+    }
+
+    /**
+     *
+     * @param key
+     * @return the content for key if it's in the pool and has been loaded,
+     *         otherwise null. Doesn't acquire a reference
+     */
+    public V getIfLoaded(K key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        return entry == null ? null : new ReferenceImpl(entry).getIfDone();
+    }
+
+    /**
+     *
+     * @param key
+     * @return number of unreleased references to the content for key
+     */
+    public synchronized int getReferenceCount(K key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.refCount;
+    }
+
+    /**
+     *
+     * @return number of pieces of content currently in the pool (loaded or
+     *         still loading)
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     *
+     * @return number of loads started
+     */
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     *
+     * @return number of acquisitions that shared content already in the
+     *         pool rather than starting a load
+     */
+    public synchronized long getSharedCount() {
+        return sharedCount;
+    }
+
+    public synchronized void resetStatistics() {
+        loadCount = sharedCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SharedContentPool[" + entries.size() + " entries, " + loadCount + " loads, " + sharedCount + " shared]";
+    }
+
+}
@@ -0,0 +1,21 @@
+package de.sofd.swing;
+
+/**
+ * Something holding memory it can give up on demand, like a
+ * {@link ContentCache}. Registered with a {@link MemoryPressureMonitor}, it is
+ * asked to shrink when the heap is running full.
+ */
+public interface Shrinkable {
+
+    /**
+     * Release memory until at most targetFraction of the normal budget is
+     * used. Memory that's still needed (e.g. content of displayed cells) may
+     * be kept, so the target isn't necessarily reached. May be called from
+     * any thread.
+     *
+     * @param targetFraction
+     *            between 0 and 1
+     */
+    void shrink(double targetFraction);
+
+}
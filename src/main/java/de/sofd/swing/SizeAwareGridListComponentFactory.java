@@ -0,0 +1,68 @@
+package de.sofd.swing;
+
+import java.awt.Dimension;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+
+/**
+ * Extension of {@link GridListComponentFactory} for factories that want to
+ * know the pixel size of the cells they're filling, e.g. for decoding images
+ * at exactly the displayed size rather than at maximum size (and scaling them
+ * down at paint time).
+ * <p>
+ * If a {@link JGridList JGridList's} factory implements this interface, the
+ * list calls
+ * {@link #createComponent(JGridList, JPanel, Object, Dimension, double)}
+ * instead of
+ * {@link GridListComponentFactory#createComponent(JGridList, JPanel, Object)},
+ * and calls {@link #cellSizeChanged(JGridList, JPanel, Object, JComponent, Dimension, double)}
+ * for all displayed cells whenever the cell size changes, be it through
+ * {@link JGridList#setGridSizes(int, int)} or through resizing the list.
+ * <p>
+ * While the list is being resized interactively, cellSizeChanged is only
+ * called once the size has settled (see
+ * {@link JGridList#setCellSizeSettleDelay(int)}). In the meantime, the cell
+ * components are just resized by the layout, and
+ * {@link JGridList#isCellSizeAdjusting()} returns true; components should
+ * only stretch their existing content cheaply then.
+ */
+public interface SizeAwareGridListComponentFactory extends GridListComponentFactory {
+
+    /**
+     * Like {@link GridListComponentFactory#createComponent(JGridList, JPanel, Object)},
+     * but with the current cell size.
+     *
+     * @param source
+     * @param parent
+     * @param modelItem
+     * @param cellSize
+     *            current size of the cell (i.e. parent) in logical pixels. See
+     *            {@link JGridList#getCellSize()}; may be 0x0 if the list
+     *            hasn't been laid out yet
+     * @param deviceScale
+     *            number of device pixels per logical pixel (&gt; 1 on HiDPI
+     *            screens). Content meant to be displayed at full resolution
+     *            should be cellSize * deviceScale device pixels large
+     * @return the created component
+     */
+    JComponent createComponent(JGridList source, JPanel parent, Object modelItem, Dimension cellSize, double deviceScale);
+
+    /**
+     * The size of the cells changed. Called for each displayed cell, after the
+     * new size has taken effect.
+     *
+     * @param source
+     * @param parent
+     * @param modelItem
+     *            item that the component represents
+     * @param component
+     *            the component, as returned by createComponent
+     * @param cellSize
+     *            the new cell size
+     * @param deviceScale
+     *            the new device scale
+     */
+    void cellSizeChanged(JGridList source, JPanel parent, Object modelItem, JComponent component, Dimension cellSize, double deviceScale);
+
+}
@@ -0,0 +1,466 @@
+package de.sofd.swing;
+
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.swing.AbstractListModel;
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * {@link ListModel} decorator that presents the elements of a source
+ * ListModel sorted by a {@link Comparator} that may be replaced at runtime.
+ * Elements that compare as equal are kept in source order.
+ * <p>
+ * The sort order is kept as a permutation of source indices in primitive int
+ * arrays. The initial sort and the re-sort after a comparator change sort
+ * that permutation with a parallel merge sort on the common
+ * {@link ForkJoinPool} (the comparator must be thread-safe). Elements added
+ * to the source later are placed by binary search and announced as
+ * single-index intervalAdded events, so a {@link JGridList} displaying this
+ * model only has to create the cells for the new elements. Removed source
+ * elements are announced as one intervalRemoved event per contiguous run of
+ * view indices. Changed source elements are moved to their new position by
+ * removal and insertion events. Large bulk changes of the source fall back to
+ * a full re-sort, announced as the change in size at the end of the view
+ * followed by a contentsChanged event for the rest.
+ * <p>
+ * The view keeps references to the elements it presents, so elements whose
+ * removal from the source hasn't been announced yet are still returned by
+ * {@link #getElementAt(int)}.
+ */
+public class SortedListModel extends AbstractListModel implements BulkListModel {
+
+    /**
+     * minimum number of elements to sort for going parallel
+     */
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    /**
+     * maximum number of elements sorted in one parallel subtask
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 2048;
+
+    /**
+     * maximum number of source elements added or changed in one event that
+     * are processed individually rather than by re-sorting everything
+     */
+    private static final int MAX_INCREMENTAL_ELEMENTS = 64;
+
+    @SuppressWarnings("unchecked")
+    private static final Comparator<Object> NATURAL_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object o1, Object o2) {
+            return ((Comparable<Object>) o1).compareTo(o2);
+        }
+    };
+
+    private final ListModel source;
+    private Comparator<Object> comparator;
+    private int size;
+    private int[] viewToSource;
+    private Object[] viewElements;
+    private int[] sourceToView;
+
+    /**
+     *
+     * @param source
+     * @param comparator
+     *            initial comparator; null to sort by the elements' natural
+     *            ordering
+     */
+    public SortedListModel(ListModel source, Comparator<?> comparator) {
+        this.source = source;
+        this.comparator = toObjectComparator(comparator);
+        sort();
+        source.addListDataListener(sourceListener);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Object> toObjectComparator(Comparator<?> comparator) {
+        return comparator == null ? NATURAL_ORDER : (Comparator<Object>) comparator;
+    }
+
+    public ListModel getSource() {
+        return source;
+    }
+
+    public Comparator<?> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Replace the comparator and re-sort.
+     *
+     * @param comparator
+     *            new comparator; null to sort by the elements' natural
+     *            ordering
+     */
+    public void setComparator(Comparator<?> comparator) {
+        this.comparator = toObjectComparator(comparator);
+        resort();
+    }
+
+    /**
+     * Re-sort all elements, e.g. after the comparator's criteria changed.
+     */
+    public void resort() {
+        int oldSize = size;
+        sort();
+        if (size > oldSize) {
+            fireIntervalAdded(this, oldSize, size - 1);
+        } else if (size < oldSize) {
+            fireIntervalRemoved(this, size, oldSize - 1);
+        }
+        int commonSize = Math.min(oldSize, size);
+        if (commonSize > 0) {
+            fireContentsChanged(this, 0, commonSize - 1);
+        }
+    }
+
+    /**
+     * Stop listening to the source model. Needed if the source model lives
+     * longer than this model.
+     */
+    public void dispose() {
+        source.removeListDataListener(sourceListener);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Object getElementAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("" + index);
+        }
+        return viewElements[index];
+    }
+
+    @Override
+    public void getElements(int fromIndex, int toIndex, Object[] dest) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("" + fromIndex + ".." + toIndex);
+        }
+        System.arraycopy(viewElements, fromIndex, dest, 0, toIndex - fromIndex);
+    }
+
+    public int convertViewIndexToSource(int viewIndex) {
+        if (viewIndex < 0 || viewIndex >= size) {
+            throw new IndexOutOfBoundsException("" + viewIndex);
+        }
+        return viewToSource[viewIndex];
+    }
+
+    public int convertSourceIndexToView(int sourceIndex) {
+        if (sourceIndex < 0 || sourceIndex >= size) {
+            throw new IndexOutOfBoundsException("" + sourceIndex);
+        }
+        return sourceToView[sourceIndex];
+    }
+
+    private void sort() {
+        size = source.getSize();
+        Object[] elements = new Object[size];
+        if (source instanceof BulkListModel) {
+            ((BulkListModel) source).getElements(0, size, elements);
+        } else {
+            for (int i = 0; i < size; i++) {
+                elements[i] = source.getElementAt(i);
+            }
+        }
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        SortTask task = new SortTask(comparator, elements, permutation, new int[size], 0, size);
+        if (size >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.compute();
+        }
+        viewToSource = permutation;
+        viewElements = new Object[size];
+        sourceToView = new int[size];
+        for (int i = 0; i < size; i++) {
+            viewElements[i] = elements[permutation[i]];
+            sourceToView[permutation[i]] = i;
+        }
+    }
+
+    /**
+     * Compare the source element <i>element1</i> (at source index
+     * <i>sourceIndex1</i>) and the one at view index <i>viewIndex2</i>,
+     * falling back to source order for equal elements.
+     */
+    private int compare(Object element1, int sourceIndex1, int viewIndex2) {
+        int sourceIndex2 = viewToSource[viewIndex2];
+        int c = comparator.compare(element1, viewElements[viewIndex2]);
+        return c != 0 ? c : (sourceIndex1 < sourceIndex2 ? -1 : (sourceIndex1 == sourceIndex2 ? 0 : 1));
+    }
+
+    /**
+     *
+     * @return view position at which the source element <i>element</i> at
+     *         index <i>sourceIndex</i> (which must not be in the view) belongs
+     */
+    private int findInsertionPosition(Object element, int sourceIndex) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(element, sourceIndex, mid) > 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Insert the source element at <i>sourceIndex</i> (whose sourceToView
+     * slot must exist already) into the view.
+     *
+     * @return its view index
+     */
+    private int insertIntoView(int sourceIndex) {
+        Object element = source.getElementAt(sourceIndex);
+        int pos = findInsertionPosition(element, sourceIndex);
+        if (size == viewToSource.length) {
+            int capacity = Math.max(16, 2 * size);
+            int[] newViewToSource = new int[capacity];
+            System.arraycopy(viewToSource, 0, newViewToSource, 0, size);
+            viewToSource = newViewToSource;
+            Object[] newViewElements = new Object[capacity];
+            System.arraycopy(viewElements, 0, newViewElements, 0, size);
+            viewElements = newViewElements;
+        }
+        System.arraycopy(viewToSource, pos, viewToSource, pos + 1, size - pos);
+        System.arraycopy(viewElements, pos, viewElements, pos + 1, size - pos);
+        viewToSource[pos] = sourceIndex;
+        viewElements[pos] = element;
+        size++;
+        for (int i = pos; i < size; i++) {
+            sourceToView[viewToSource[i]] = i;
+        }
+        return pos;
+    }
+
+    /**
+     * Remove the elements at view indices [<i>fromPos</i>, <i>toPos</i>] from
+     * the view (but not their sourceToView slots).
+     */
+    private void removeFromView(int fromPos, int toPos) {
+        int n = toPos - fromPos + 1;
+        System.arraycopy(viewToSource, toPos + 1, viewToSource, fromPos, size - toPos - 1);
+        System.arraycopy(viewElements, toPos + 1, viewElements, fromPos, size - toPos - 1);
+        for (int i = size - n; i < size; i++) {
+            viewElements[i] = null;
+        }
+        size -= n;
+        for (int i = fromPos; i < size; i++) {
+            if (viewToSource[i] >= 0) {
+                sourceToView[viewToSource[i]] = i;
+            }
+        }
+    }
+
+    /**
+     * Remove the elements at the view indices for which <i>removed</i> is true
+     * from the view, firing an intervalRemoved event for each contiguous
+     * run of them (from the end of the view, so the indices of the events
+     * remain valid).
+     */
+    private void removeFromView(boolean[] removed) {
+        int pos = size - 1;
+        while (pos >= 0) {
+            if (!removed[pos]) {
+                pos--;
+                continue;
+            }
+            int runEnd = pos;
+            while (pos > 0 && removed[pos - 1]) {
+                pos--;
+            }
+            removeFromView(pos, runEnd);
+            fireIntervalRemoved(this, pos, runEnd);
+            pos--;
+        }
+    }
+
+    private final ListDataListener sourceListener = new ListDataListener() {
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            int n = index1 - index0 + 1;
+            if (index0 < 0 || n > MAX_INCREMENTAL_ELEMENTS) {
+                resort();
+                return;
+            }
+            int sourceSize = source.getSize();
+            // renumber the source indices behind the insertion point
+            for (int i = 0; i < size; i++) {
+                if (viewToSource[i] >= index0) {
+                    viewToSource[i] += n;
+                }
+            }
+            int[] newSourceToView = new int[sourceSize];
+            System.arraycopy(sourceToView, 0, newSourceToView, 0, index0);
+            System.arraycopy(sourceToView, index0, newSourceToView, index1 + 1, sourceSize - index1 - 1);
+            sourceToView = newSourceToView;
+            for (int sourceIndex = index0; sourceIndex <= index1; sourceIndex++) {
+                int pos = insertIntoView(sourceIndex);
+                fireIntervalAdded(SortedListModel.this, pos, pos);
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0) {
+                resort();
+                return;
+            }
+            int n = index1 - index0 + 1;
+            // the removed elements are gone from the source already, so they
+            // are marked with source index -1 until their removal has been
+            // announced (they are still in viewElements until then)
+            boolean[] removed = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                int sourceIndex = viewToSource[i];
+                if (sourceIndex > index1) {
+                    viewToSource[i] = sourceIndex - n;
+                } else if (sourceIndex >= index0) {
+                    viewToSource[i] = -1;
+                    removed[i] = true;
+                }
+            }
+            sourceToView = new int[source.getSize()];
+            for (int i = 0; i < size; i++) {
+                if (viewToSource[i] >= 0) {
+                    sourceToView[viewToSource[i]] = i;
+                }
+            }
+            removeFromView(removed);
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            int index0 = Math.min(e.getIndex0(), e.getIndex1());
+            int index1 = Math.max(e.getIndex0(), e.getIndex1());
+            if (index0 < 0 || source.getSize() != size || index1 - index0 + 1 > MAX_INCREMENTAL_ELEMENTS) {
+                resort();
+                return;
+            }
+            if (index0 == index1) {
+                int oldPos = sourceToView[index0];
+                removeFromView(oldPos, oldPos);
+                int newPos = findInsertionPosition(source.getElementAt(index0), index0);
+                if (newPos == oldPos) {
+                    insertIntoView(index0);
+                    fireContentsChanged(SortedListModel.this, oldPos, oldPos);
+                } else {
+                    fireIntervalRemoved(SortedListModel.this, oldPos, oldPos);
+                    newPos = insertIntoView(index0);
+                    fireIntervalAdded(SortedListModel.this, newPos, newPos);
+                }
+                return;
+            }
+            // take all changed elements out first, so the binary searches
+            // for their new positions only see correctly sorted elements
+            boolean[] changed = new boolean[size];
+            for (int sourceIndex = index0; sourceIndex <= index1; sourceIndex++) {
+                changed[sourceToView[sourceIndex]] = true;
+            }
+            removeFromView(changed);
+            for (int sourceIndex = index0; sourceIndex <= index1; sourceIndex++) {
+                int pos = insertIntoView(sourceIndex);
+                fireIntervalAdded(SortedListModel.this, pos, pos);
+            }
+        }
+
+    };
+
+    /**
+     * Stable merge sort of a permutation of indices into an element array.
+     * Subranges larger than {@link SortedListModel#PARALLEL_CHUNK_SIZE} are
+     * sorted in parallel when run in a ForkJoinPool.
+     */
+    private static class SortTask extends RecursiveAction {
+        private final Comparator<Object> comparator;
+        private final Object[] elements;
+        private final int[] permutation, buffer;
+        private final int from, to;
+
+        SortTask(Comparator<Object> comparator, Object[] elements, int[] permutation, int[] buffer, int from, int to) {
+            this.comparator = comparator;
+            this.elements = elements;
+            this.permutation = permutation;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_CHUNK_SIZE || !inForkJoinPool()) {
+                mergeSort(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SortTask(comparator, elements, permutation, buffer, from, mid),
+                          new SortTask(comparator, elements, permutation, buffer, mid, to));
+                merge(from, mid, to);
+            }
+        }
+
+        private void mergeSort(int lo, int hi) {
+            if (hi - lo <= 16) {
+                // insertion sort
+                for (int i = lo + 1; i < hi; i++) {
+                    int v = permutation[i];
+                    int j = i - 1;
+                    while (j >= lo && comparator.compare(elements[permutation[j]], elements[v]) > 0) {
+                        permutation[j + 1] = permutation[j];
+                        j--;
+                    }
+                    permutation[j + 1] = v;
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            mergeSort(lo, mid);
+            mergeSort(mid, hi);
+            merge(lo, mid, hi);
+        }
+
+        private void merge(int lo, int mid, int hi) {
+            if (comparator.compare(elements[permutation[mid - 1]], elements[permutation[mid]]) <= 0) {
+                return;  // already in order
+            }
+            System.arraycopy(permutation, lo, buffer, lo, hi - lo);
+            int i = lo, j = mid, k = lo;
+            while (i < mid && j < hi) {
+                // <= keeps equal elements in source order
+                if (comparator.compare(elements[buffer[i]], elements[buffer[j]]) <= 0) {
+                    permutation[k++] = buffer[i++];
+                } else {
+                    permutation[k++] = buffer[j++];
+                }
+            }
+            while (i < mid) {
+                permutation[k++] = buffer[i++];
+            }
+            while (j < hi) {
+                permutation[k++] = buffer[j++];
+            }
+        }
+    }
+
+}
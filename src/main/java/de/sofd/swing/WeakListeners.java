@@ -0,0 +1,118 @@
+package de.sofd.swing;
+
+import java.lang.ref.WeakReference;
+
+import javax.swing.ListModel;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+
+/**
+ * Listener wrappers that reference their delegate listener only weakly, so
+ * registering them with a long-lived model does not keep the delegate (and
+ * everything reachable from it, e.g. a whole {@link JGridList} with its cell
+ * components) from being garbage collected. Once the delegate has been
+ * collected, a wrapper deregisters itself from the source the next time it
+ * receives an event.
+ * <p>
+ * The delegate must be strongly referenced by its owner for as long as it
+ * should receive events (e.g. by storing it in a field of the owner, which is
+ * what JGridList does).
+ */
+public class WeakListeners {
+
+    private WeakListeners() {
+    }
+
+    public static class WeakListDataListener implements ListDataListener {
+        private final WeakReference<ListDataListener> delegateRef;
+        private final ListModel source;
+
+        public WeakListDataListener(ListDataListener delegate, ListModel source) {
+            this.delegateRef = new WeakReference<ListDataListener>(delegate);
+            this.source = source;
+        }
+
+        private ListDataListener getDelegate() {
+            ListDataListener delegate = delegateRef.get();
+            if (delegate == null) {
+                source.removeListDataListener(this);
+            }
+            return delegate;
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            ListDataListener delegate = getDelegate();
+            if (delegate != null) {
+                delegate.contentsChanged(e);
+            }
+        }
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            ListDataListener delegate = getDelegate();
+            if (delegate != null) {
+                delegate.intervalAdded(e);
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            ListDataListener delegate = getDelegate();
+            if (delegate != null) {
+                delegate.intervalRemoved(e);
+            }
+        }
+    }
+
+    public static class WeakListSelectionListener implements ListSelectionListener {
+        private final WeakReference<ListSelectionListener> delegateRef;
+        private final ListSelectionModel source;
+
+        public WeakListSelectionListener(ListSelectionListener delegate, ListSelectionModel source) {
+            this.delegateRef = new WeakReference<ListSelectionListener>(delegate);
+            this.source = source;
+        }
+
+        @Override
+        public void valueChanged(ListSelectionEvent e) {
+            ListSelectionListener delegate = delegateRef.get();
+            if (delegate == null) {
+                source.removeListSelectionListener(this);
+            } else {
+                delegate.valueChanged(e);
+            }
+        }
+    }
+
+    /**
+     * Weak ChangeListener for {@link ObservableListItem ObservableListItems}.
+     * May be registered with any number of items; deregisters itself from the
+     * event source, which must be the item.
+     */
+    public static class WeakItemChangeListener implements ChangeListener {
+        private final WeakReference<ChangeListener> delegateRef;
+
+        public WeakItemChangeListener(ChangeListener delegate) {
+            this.delegateRef = new WeakReference<ChangeListener>(delegate);
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            ChangeListener delegate = delegateRef.get();
+            if (delegate == null) {
+                if (e.getSource() instanceof ObservableListItem) {
+                    ((ObservableListItem) e.getSource()).removeChangeListener(this);
+                }
+            } else {
+                delegate.stateChanged(e);
+            }
+        }
+    }
+
+}
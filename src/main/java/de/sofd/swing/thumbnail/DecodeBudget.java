@@ -0,0 +1,149 @@
+package de.sofd.swing.thumbnail;
+
+import de.sofd.swing.CellBinding;
+
+/**
+ * Memory budget for image decoding jobs that run in parallel. Each job
+ * {@link #acquire(long, CellBinding) acquires} the number of bytes it's
+ * estimated to allocate before it starts decoding, and
+ * {@link #release(long) releases} them when it's done. Jobs that would
+ * exceed the budget wait until enough running jobs have finished, so fast
+ * scrolling over large images doesn't allocate lots of full resolution
+ * rasters at once.
+ * <p>
+ * A waiting job whose cell has been recycled in the meantime (i.e. whose
+ * {@link CellBinding} became invalid) gives up instead of being admitted, so
+ * the budget goes to the cells that are still displayed. A single job that's
+ * larger than the whole budget is admitted when no other job is running.
+ * <p>
+ * Thread-safe. The current usage is available via {@link #getUsedBytes()}
+ * and the other statistics getters.
+ */
+public class DecodeBudget {
+
+    // interval in which waiting jobs re-check their binding
+    private static final long RECHECK_INTERVAL_MS = 50;
+
+    private long maxBytes;
+    private long usedBytes;
+    private long peakUsedBytes;
+    private int runningCount;
+    private int waitingCount;
+    private long admittedCount;
+    private long abandonedCount;
+
+    /**
+     *
+     * @param maxBytes
+     *            maximum number of bytes that running jobs may use together
+     */
+    public DecodeBudget(long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        notifyAll();
+    }
+
+    /**
+     * Wait until bytes fit into the budget, and reserve them.
+     *
+     * @param bytes
+     *            estimated number of bytes the job will allocate
+     * @param binding
+     *            binding of the cell the job produces content for, or null if
+     *            the job should never be abandoned
+     * @return true if the bytes were reserved; the caller must
+     *         {@link #release(long) release} them afterwards. false if the
+     *         binding became invalid while waiting; the job should be
+     *         abandoned then
+     * @throws InterruptedException
+     */
+    public synchronized boolean acquire(long bytes, CellBinding binding) throws InterruptedException {
+        waitingCount++;
+        try {
+            while (runningCount > 0 && usedBytes + bytes > maxBytes) {
+                if (binding != null && !binding.isValid()) {
+                    abandonedCount++;
+                    return false;
+                }
+                wait(RECHECK_INTERVAL_MS);
+            }
+            if (binding != null && !binding.isValid()) {
+                abandonedCount++;
+                return false;
+            }
+        } finally {
+            waitingCount--;
+        }
+        usedBytes += bytes;
+        runningCount++;
+        admittedCount++;
+        peakUsedBytes = Math.max(peakUsedBytes, usedBytes);
+        return true;
+    }
+
+    /**
+     * Give back bytes reserved by a successful {@link #acquire(long, CellBinding)}.
+     *
+     * @param bytes
+     */
+    public synchronized void release(long bytes) {
+        usedBytes -= bytes;
+        runningCount--;
+        notifyAll();
+    }
+
+    /**
+     *
+     * @return number of bytes currently reserved by running jobs
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     *
+     * @return maximum of {@link #getUsedBytes()} since the last
+     *         {@link #resetStatistics()}
+     */
+    public synchronized long getPeakUsedBytes() {
+        return peakUsedBytes;
+    }
+
+    public synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    public synchronized int getWaitingCount() {
+        return waitingCount;
+    }
+
+    public synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    /**
+     *
+     * @return number of jobs that gave up waiting because their cell was
+     *         recycled
+     */
+    public synchronized long getAbandonedCount() {
+        return abandonedCount;
+    }
+
+    public synchronized void resetStatistics() {
+        peakUsedBytes = usedBytes;
+        admittedCount = 0;
+        abandonedCount = 0;
+    }
+
+}
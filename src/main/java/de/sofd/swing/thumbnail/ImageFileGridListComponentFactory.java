@@ -0,0 +1,1001 @@
+package de.sofd.swing.thumbnail;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Insets;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import de.sofd.swing.AbstractFramedSelectionGridListComponentFactory;
+import de.sofd.swing.CellBinding;
+import de.sofd.swing.CellLoadExecutors;
+import de.sofd.swing.ContentCache;
+import de.sofd.swing.EdtBatchDispatcher;
+import de.sofd.swing.JGridList;
+import de.sofd.swing.SharedContentPool;
+import de.sofd.swing.SizeAwareGridListComponentFactory;
+
+/**
+ * {@link de.sofd.swing.GridListComponentFactory} for lists of images. By
+ * default, the model items are expected to be image Files, URLs or byte
+ * arrays containing encoded images; override
+ * {@link #decodeImage(Object, int, int)} for other kinds of items. Items are
+ * decoded again whenever they're rebound or the cell size changes, so they
+ * must be readable repeatedly; InputStreams aren't supported for that
+ * reason.
+ * <p>
+ * Images are decoded by a {@link SubsampledImageDecoder} at the size of the
+ * cells they're displayed in (in device pixels), on a background executor.
+ * When the cell size changes, the images are decoded again at the new size;
+ * the old images stay displayed in the meantime. Until an image has
+ * been decoded, its cell displays a placeholder. Cell components are reused
+ * when the list is scrolled; a decoding job whose cell has been rebound to a
+ * different item in the meantime is cancelled, or its result is dropped.
+ * <p>
+ * Decoded images may optionally be kept in a {@link ContentCache}, so items
+ * that are scrolled back into view are displayed immediately. The entries
+ * of the images that are currently displayed are
+ * {@link ContentCache#pin(Object) pinned}, so if the cache is registered with
+ * a {@link de.sofd.swing.MemoryPressureMonitor}, only the images of cells
+ * that aren't displayed are given up under memory pressure.
+ * <p>
+ * To cache many more images than the heap would allow, decoded images may
+ * also be kept in an {@link #setRasterStore(OffHeapRasterStore)
+ * OffHeapRasterStore}. Cells displaying an image from the store hold an
+ * on-heap copy, which is returned to the store's image pool when the cell
+ * is recycled.
+ * <p>
+ * In {@link #setProgressive(boolean) progressive} mode (the default), an
+ * image that isn't in the cache is first decoded at a fraction of the cell
+ * size, which is cheap with subsampling, and displayed stretched to the cell
+ * size until the full-size version has been decoded. Both versions are
+ * delivered through the cell's {@link CellBinding}, so they only repaint
+ * their own cell and are dropped (and the remaining work is cancelled) when
+ * the cell is recycled in the meantime.
+ * <p>
+ * Several factories (e.g. of several lists displaying the same images) may
+ * share a {@link #setSharedContentPool(SharedContentPool) SharedContentPool},
+ * so that an image displayed in several cells of the same size is decoded
+ * and held only once.
+ * <p>
+ * If an {@link #setIoExecutor(ExecutorService) I/O executor} is set, the
+ * image files are read on that (see {@link CellLoadExecutors#newIoExecutor(String)}),
+ * and only the decoding runs on the decoder threads, whose number should
+ * then match the number of cores. The number of images that have been read
+ * but not decoded yet is {@link #setMaxInFlightReads(int) limited}.
+ * <p>
+ * The memory used by decoding jobs running in parallel can be limited with
+ * a {@link #setDecodeBudget(DecodeBudget) DecodeBudget}.
+ * <p>
+ * If a {@link #setThumbnailDiskCache(ThumbnailDiskCache) ThumbnailDiskCache}
+ * is set, thumbnails of image Files are looked up in it before they're
+ * decoded, and decoded thumbnails are stored in it. This includes thumbnails
+ * written by the {@link ThumbnailPregenerator}, provided it was run for the
+ * cell sizes (in device pixels) the list is displayed with.
+ */
+public class ImageFileGridListComponentFactory extends AbstractFramedSelectionGridListComponentFactory
+        implements SizeAwareGridListComponentFactory {
+
+    private final int defaultCellWidth, defaultCellHeight;
+    private final boolean cropToFill;
+    private final ExecutorService decodeExecutor;
+    private final boolean ownsExecutor;
+    private ContentCache<Object, Image> contentCache;
+    private boolean progressive = true;
+    private DecodeBudget decodeBudget;
+    private SharedContentPool<Object, Image> sharedContentPool;
+    private ExecutorService ioExecutor;
+    private int maxInFlightReads = DEFAULT_MAX_IN_FLIGHT_READS;
+    private volatile Semaphore inFlightReads = new Semaphore(DEFAULT_MAX_IN_FLIGHT_READS);
+    private ThumbnailDiskCache thumbnailDiskCache;
+    private OffHeapRasterStore<Object> rasterStore;
+
+    // size of coarse previews relative to the cell size, and the minimum
+    // cell size for which a preview pays off
+    private static final int COARSE_DIVISOR = 8;
+    private static final int MIN_COARSE_SIZE = 16;
+
+    public static final int DEFAULT_MAX_IN_FLIGHT_READS = 2 * Runtime.getRuntime().availableProcessors();
+    // interval in which reads waiting for a permit re-check their binding
+    private static final long READ_PERMIT_RECHECK_MS = 50;
+
+    /**
+     * Creates a factory using its own pool of decoder threads.
+     *
+     * @param defaultCellWidth
+     *            cell width to decode images for if the actual cell size isn't
+     *            known yet (because the list has no size yet)
+     * @param defaultCellHeight
+     *            cell height to decode images for if the actual cell size
+     *            isn't known yet
+     * @param cropToFill
+     *            see {@link SubsampledImageDecoder#decode(Object, int, int, boolean)}
+     */
+    public ImageFileGridListComponentFactory(int defaultCellWidth, int defaultCellHeight, boolean cropToFill) {
+        this(defaultCellWidth, defaultCellHeight, cropToFill, createDefaultExecutor(), true);
+    }
+
+    /**
+     *
+     * @param defaultCellWidth
+     * @param defaultCellHeight
+     * @param cropToFill
+     * @param decodeExecutor
+     *            executor to decode the images on
+     */
+    public ImageFileGridListComponentFactory(int defaultCellWidth, int defaultCellHeight, boolean cropToFill, ExecutorService decodeExecutor) {
+        this(defaultCellWidth, defaultCellHeight, cropToFill, decodeExecutor, false);
+    }
+
+    private ImageFileGridListComponentFactory(int defaultCellWidth, int defaultCellHeight, boolean cropToFill,
+            ExecutorService decodeExecutor, boolean ownsExecutor) {
+        this.defaultCellWidth = defaultCellWidth;
+        this.defaultCellHeight = defaultCellHeight;
+        this.cropToFill = cropToFill;
+        this.decodeExecutor = decodeExecutor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        return CellLoadExecutors.newCpuExecutor("ImageFileGridListComponentFactory decoder");
+    }
+
+    public ContentCache<Object, Image> getContentCache() {
+        return contentCache;
+    }
+
+    /**
+     * Set the cache to keep decoded images in. Keys are built from the model
+     * item, the decoded size and the crop mode (see
+     * {@link #getCacheKey(Object, int, int)}), so the cache may be shared with
+     * factories using the other mode. May be null (the default) for no
+     * caching.
+     *
+     * @param contentCache
+     */
+    public void setContentCache(ContentCache<Object, Image> contentCache) {
+        this.contentCache = contentCache;
+    }
+
+    public boolean isCropToFill() {
+        return cropToFill;
+    }
+
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Set the executor to read images on before they're decoded on the
+     * decoder threads. May be null (the default) for reading and decoding
+     * them on the decoder threads in one go. The executor isn't shut down by
+     * {@link #dispose()}. Takes effect for cells bound afterwards.
+     *
+     * @param ioExecutor
+     */
+    public void setIoExecutor(ExecutorService ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    public int getMaxInFlightReads() {
+        return maxInFlightReads;
+    }
+
+    /**
+     * Set the maximum number of images that have been read by the
+     * {@link #setIoExecutor(ExecutorService) I/O executor} but not decoded
+     * yet, which bounds the memory held by read image data. Further reads
+     * wait until images have been decoded, and give up when their cell is
+     * recycled in the meantime. Takes effect for cells bound afterwards.
+     *
+     * @param maxInFlightReads
+     */
+    public void setMaxInFlightReads(int maxInFlightReads) {
+        if (maxInFlightReads < 1) {
+            throw new IllegalArgumentException("maxInFlightReads must be positive: " + maxInFlightReads);
+        }
+        this.maxInFlightReads = maxInFlightReads;
+        this.inFlightReads = new Semaphore(maxInFlightReads);
+    }
+
+    public SharedContentPool<Object, Image> getSharedContentPool() {
+        return sharedContentPool;
+    }
+
+    /**
+     * Set the pool to share decoded images through. Keys are the same as for
+     * the {@link #setContentCache(ContentCache) content cache}. May be null
+     * (the default) for decoding images for each cell separately. Takes
+     * effect for cells bound afterwards.
+     *
+     * @param sharedContentPool
+     */
+    public void setSharedContentPool(SharedContentPool<Object, Image> sharedContentPool) {
+        this.sharedContentPool = sharedContentPool;
+    }
+
+    public ThumbnailDiskCache getThumbnailDiskCache() {
+        return thumbnailDiskCache;
+    }
+
+    /**
+     * Set the persistent cache to look up thumbnails of image Files in
+     * before decoding them, and to store decoded thumbnails in. Thumbnails
+     * are stored under {@link ThumbnailDiskCache#getThumbnailId(File, int, int)}
+     * and {@link ThumbnailDiskCache#getContentHash(File)}, like the
+     * {@link ThumbnailPregenerator} stores them. Only used if the factory
+     * doesn't {@link #isCropToFill() crop to fill}, because the stored
+     * thumbnails are scaled to fit. May be null (the default). The cache
+     * isn't closed by {@link #dispose()}.
+     *
+     * @param thumbnailDiskCache
+     */
+    public void setThumbnailDiskCache(ThumbnailDiskCache thumbnailDiskCache) {
+        this.thumbnailDiskCache = thumbnailDiskCache;
+    }
+
+    public OffHeapRasterStore<Object> getRasterStore() {
+        return rasterStore;
+    }
+
+    /**
+     * Set the off-heap store to keep decoded images in. Keys are the same as
+     * for the {@link #setContentCache(ContentCache) content cache}, which is
+     * consulted first if both are set. May be null (the default). The store
+     * isn't cleared by {@link #dispose()}. Takes effect for cells bound
+     * afterwards.
+     *
+     * @param rasterStore
+     */
+    public void setRasterStore(OffHeapRasterStore<Object> rasterStore) {
+        this.rasterStore = rasterStore;
+    }
+
+    public DecodeBudget getDecodeBudget() {
+        return decodeBudget;
+    }
+
+    /**
+     * Set the memory budget that decoding jobs must fit into, using
+     * {@link #estimateDecodeBytes(Object, int, int)}. May be null (the
+     * default) for no limit.
+     *
+     * @param decodeBudget
+     */
+    public void setDecodeBudget(DecodeBudget decodeBudget) {
+        this.decodeBudget = decodeBudget;
+    }
+
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    /**
+     * Set whether images are displayed as a coarse preview first. Takes
+     * effect for cells bound afterwards.
+     *
+     * @param progressive
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    /**
+     * Shut down the decoder threads if the factory created them itself.
+     */
+    public void dispose() {
+        if (ownsExecutor) {
+            decodeExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public JComponent createComponent(JGridList source, JPanel parent, Object modelItem) {
+        return createComponent(source, parent, modelItem, getCellSize(source, parent), 1.0);
+    }
+
+    @Override
+    public JComponent createComponent(JGridList source, JPanel parent, Object modelItem, Dimension cellSize, double deviceScale) {
+        ImageCell cell;
+        if (parent.getComponentCount() > 0 && parent.getComponent(0) instanceof ImageCell) {
+            cell = (ImageCell) parent.getComponent(0);
+        } else {
+            parent.removeAll();
+            cell = new ImageCell();
+            parent.add(cell);
+        }
+        bind(cell, source.getCellBinding(parent), modelItem, getDecodeSize(source, parent, cellSize, deviceScale), false);
+        return cell;
+    }
+
+    @Override
+    public void cellSizeChanged(JGridList source, JPanel parent, Object modelItem, JComponent component, Dimension cellSize, double deviceScale) {
+        if (component instanceof ImageCell && modelItem != null) {
+            bind((ImageCell) component, source.getCellBinding(parent), modelItem, getDecodeSize(source, parent, cellSize, deviceScale), true);
+        }
+    }
+
+    private Dimension getDecodeSize(JGridList source, JPanel parent, Dimension cellSize, double deviceScale) {
+        if (cellSize.width <= 0 || cellSize.height <= 0) {
+            cellSize = getCellSize(source, parent);
+        }
+        return new Dimension(Math.max(1, (int) Math.ceil(cellSize.width * deviceScale)),
+                             Math.max(1, (int) Math.ceil(cellSize.height * deviceScale)));
+    }
+
+    @Override
+    public void deleteComponent(JGridList source, JPanel parent, Object modelItem, JComponent component) {
+        if (component instanceof ImageCell) {
+            ((ImageCell) component).unbind(false);
+        }
+    }
+
+    @Override
+    public boolean canReuseComponents() {
+        return true;
+    }
+
+    /**
+     * Determine the cell size if the list didn't provide it.
+     *
+     * @param source
+     * @param parent
+     *            the cell's container
+     * @return the cell size
+     */
+    protected Dimension getCellSize(JGridList source, JPanel parent) {
+        if (parent.getWidth() > 0 && parent.getHeight() > 0) {
+            return parent.getSize();
+        }
+        Dimension cellSize = source.getCellSize();
+        if (cellSize.width > 0 && cellSize.height > 0) {
+            return cellSize;
+        }
+        return new Dimension(defaultCellWidth, defaultCellHeight);
+    }
+
+    /**
+     *
+     * @param modelItem
+     * @param width
+     * @param height
+     * @return key under which the image of modelItem, decoded for a cell of
+     *         the given size (and this factory's crop mode), is kept in the
+     *         content cache
+     */
+    protected Object getCacheKey(Object modelItem, int width, int height) {
+        return Arrays.asList(modelItem, width, height, cropToFill);
+    }
+
+    /**
+     * Decode the image of a model item for a cell of the given size. Called
+     * on the decoder threads. If there's an I/O executor, the result of
+     * {@link #readSource(Object)} is passed instead of the model item.
+     *
+     * @param modelItem
+     * @param width
+     * @param height
+     * @return the image. Null is treated like an IOException
+     * @throws IOException
+     */
+    protected BufferedImage decodeImage(Object modelItem, int width, int height) throws IOException {
+        if (modelItem instanceof InputStream) {
+            throw new IOException("InputStream items can't be decoded repeatedly, use byte arrays instead");
+        }
+        if (modelItem instanceof byte[]) {
+            return SubsampledImageDecoder.decode(new ByteArrayInputStream((byte[]) modelItem), width, height, cropToFill);
+        }
+        if (modelItem instanceof URL) {
+            InputStream in = ((URL) modelItem).openStream();
+            try {
+                return SubsampledImageDecoder.decode(in, width, height, cropToFill);
+            } finally {
+                in.close();
+            }
+        }
+        return SubsampledImageDecoder.decode(modelItem, width, height, cropToFill);
+    }
+
+    /**
+     * Estimate the number of bytes decoding a model item for a cell of the
+     * given size will allocate at most. The default assumes the subsampled
+     * raster to be up to twice the cell size in each direction, plus the
+     * scaled result, at 4 bytes per pixel.
+     *
+     * @param modelItem
+     * @param width
+     * @param height
+     * @return the estimate
+     */
+    protected long estimateDecodeBytes(Object modelItem, int width, int height) {
+        return 5L * width * height * 4;
+    }
+
+    /**
+     * Read the data of a model item's image, to be decoded by
+     * {@link #decodeImage(Object, int, int)}. Only called if there's an
+     * {@link #setIoExecutor(ExecutorService) I/O executor}, on that
+     * executor's threads. The default implementation reads Files and URLs
+     * into byte arrays and returns other model items unchanged.
+     *
+     * @param modelItem
+     * @return the image data
+     * @throws IOException
+     */
+    protected Object readSource(Object modelItem) throws IOException {
+        InputStream in;
+        if (modelItem instanceof File) {
+            in = new FileInputStream((File) modelItem);
+        } else if (modelItem instanceof URL) {
+            in = ((URL) modelItem).openStream();
+        } else {
+            return modelItem;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[16384];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private ExecutorService getLoadExecutor() {
+        return ioExecutor != null ? ioExecutor : decodeExecutor;
+    }
+
+    /**
+     * What the first stage of loading an image, on the load executor, hands
+     * over to the decoding stage on the decoder threads.
+     */
+    private static class LoadedSource {
+        // thumbnail from the disk cache; nothing to decode then
+        BufferedImage thumbnail;
+        // source to decode
+        Object data;
+        Exception error;
+    }
+
+    /**
+     * Load modelItem in two stages. The first stage runs on the load
+     * executor: it looks up the thumbnail in the disk cache, and if it isn't
+     * there and there's an I/O executor, it reads the source. Then
+     * decodeStage runs on the decoder threads (directly in the first stage
+     * if that already runs on them) and takes the result from loaded, which
+     * holds an error if the decoder threads rejected it.
+     * <p>
+     * The number of sources that have been read but not decoded yet is
+     * limited to {@link #getMaxInFlightReads()}, so an I/O thread may have to
+     * wait for the decoder threads before reading. It only waits as long as
+     * the load is still wanted (see {@link #isAbandoned(CellBinding, Runnable)}),
+     * so at most about as many I/O threads wait as there are cells waiting
+     * for their images.
+     *
+     * @param full
+     *            false if only a preview is needed, which is skipped if the
+     *            disk cache holds the thumbnail
+     * @param binding
+     *            nothing is done once that becomes invalid. May be null
+     * @return the future of the first stage
+     */
+    private Future<?> load(final Object modelItem, final int width, final int height, final boolean full,
+            final CellBinding binding, final LoadedSource loaded, final Runnable decodeStage) {
+        return getLoadExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                if (isAbandoned(binding, decodeStage)) {
+                    return;
+                }
+                if (full) {
+                    loaded.thumbnail = readThumbnail(modelItem, width, height);
+                    if (loaded.thumbnail != null) {
+                        decodeStage.run();
+                        return;
+                    }
+                } else if (hasThumbnail(modelItem, width, height)) {
+                    // the full-size image will be there at once, no preview needed
+                    return;
+                }
+                if (ioExecutor == null) {
+                    loaded.data = modelItem;
+                    decodeStage.run();
+                    return;
+                }
+                final Semaphore permits = inFlightReads;
+                try {
+                    if (!acquireReadPermit(permits, binding, decodeStage)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    loaded.error = e;
+                    decodeStage.run();
+                    return;
+                }
+                try {
+                    loaded.data = readSource(modelItem);
+                } catch (Exception e) {
+                    loaded.error = e;
+                }
+                try {
+                    decodeExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                decodeStage.run();
+                            } finally {
+                                loaded.data = null;
+                                permits.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shut down; complete the load (a shared one may have
+                    // other waiters) with the error
+                    loaded.data = null;
+                    permits.release();
+                    loaded.error = e;
+                    decodeStage.run();
+                }
+            }
+        });
+    }
+
+    /**
+     *
+     * @return whether the result of a load is no longer wanted: its cell's
+     *         binding has become invalid, or, for a load for the shared
+     *         content pool (whose decodeStage is the pool's future), the pool
+     *         has cancelled it because all references have been released
+     */
+    private static boolean isAbandoned(CellBinding binding, Runnable decodeStage) {
+        if (binding != null) {
+            return !binding.isValid();
+        }
+        return decodeStage instanceof Future && ((Future<?>) decodeStage).isDone();
+    }
+
+    /**
+     * Wait for a permit to keep a read source in memory until it has been
+     * decoded, giving up when the load is
+     * {@link #isAbandoned(CellBinding, Runnable) abandoned}.
+     */
+    private static boolean acquireReadPermit(Semaphore permits, CellBinding binding, Runnable decodeStage)
+            throws InterruptedException {
+        while (!permits.tryAcquire(READ_PERMIT_RECHECK_MS, TimeUnit.MILLISECONDS)) {
+            if (isAbandoned(binding, decodeStage)) {
+                return false;
+            }
+        }
+        if (isAbandoned(binding, decodeStage)) {
+            permits.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called on the load executor.
+     *
+     * @return the thumbnail of modelItem stored in the disk cache for a cell
+     *         of the given size, or null if there is none
+     */
+    private BufferedImage readThumbnail(Object modelItem, int width, int height) {
+        ThumbnailDiskCache diskCache = getUsableDiskCache(modelItem);
+        if (diskCache == null) {
+            return null;
+        }
+        File file = (File) modelItem;
+        try {
+            return diskCache.readImage(ThumbnailDiskCache.getThumbnailId(file, width, height),
+                                       ThumbnailDiskCache.getContentHash(file));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private boolean hasThumbnail(Object modelItem, int width, int height) {
+        ThumbnailDiskCache diskCache = getUsableDiskCache(modelItem);
+        if (diskCache == null) {
+            return false;
+        }
+        File file = (File) modelItem;
+        return diskCache.contains(ThumbnailDiskCache.getThumbnailId(file, width, height),
+                                  ThumbnailDiskCache.getContentHash(file));
+    }
+
+    private void writeThumbnail(Object modelItem, int width, int height, BufferedImage image) {
+        ThumbnailDiskCache diskCache = getUsableDiskCache(modelItem);
+        if (diskCache == null) {
+            return;
+        }
+        File file = (File) modelItem;
+        try {
+            diskCache.put(ThumbnailDiskCache.getThumbnailId(file, width, height),
+                          ThumbnailDiskCache.getContentHash(file), image);
+        } catch (IOException e) {
+            // just not cached
+        } catch (IllegalArgumentException e) {
+            // too large for the cache
+        }
+    }
+
+    private ThumbnailDiskCache getUsableDiskCache(Object modelItem) {
+        return cropToFill || !(modelItem instanceof File) ? null : thumbnailDiskCache;
+    }
+
+    private void keepDecoded(ContentCache<Object, Image> cache, Object key, BufferedImage image) {
+        if (cache != null) {
+            cache.put(key, image);
+        }
+        OffHeapRasterStore<Object> store = rasterStore;
+        if (store != null) {
+            store.put(key, image);
+        }
+    }
+
+    private BufferedImage decodeWithinBudget(Object modelItem, Object source, int width, int height, CellBinding binding)
+            throws IOException, InterruptedException {
+        if (binding != null && !binding.isValid()) {
+            return null;
+        }
+        DecodeBudget budget = decodeBudget;
+        if (budget == null) {
+            return decodeImage(source, width, height);
+        }
+        long bytes = estimateDecodeBytes(modelItem, width, height);
+        if (!budget.acquire(bytes, binding)) {
+            return null;
+        }
+        try {
+            return decodeImage(source, width, height);
+        } finally {
+            budget.release(bytes);
+        }
+    }
+
+    private void bind(final ImageCell cell, final CellBinding binding, final Object modelItem, Dimension cellSize, boolean keepImage) {
+        cell.unbind(keepImage);
+        if (modelItem == null) {
+            return;
+        }
+        final int serial = cell.serial;
+        final int w = cellSize.width, h = cellSize.height;
+        final Object key = getCacheKey(modelItem, w, h);
+        final ContentCache<Object, Image> cache = contentCache;
+        Image cached = (cache == null ? null : cache.get(key));
+        if (cached != null) {
+            cell.setImage(cached, false);
+            cell.pin(cache, key);
+            return;
+        }
+        OffHeapRasterStore<Object> store = rasterStore;
+        BufferedImage stored = (store == null ? null : store.acquireImage(key));
+        if (stored != null) {
+            cell.setStoredImage(stored, store);
+            return;
+        }
+        // no preview if the cell still displays an image (of the old size)
+        boolean coarseFirst = progressive && !keepImage && binding != null
+                && Math.min(w, h) / COARSE_DIVISOR >= MIN_COARSE_SIZE;
+        SharedContentPool<Object, Image> pool = sharedContentPool;
+        if (pool != null) {
+            final LoadedSource loaded = new LoadedSource();
+            final SharedContentPool.Reference<Image> ref = pool.acquire(key, new Callable<Image>() {
+                @Override
+                public Image call() throws Exception {
+                    BufferedImage image = loaded.thumbnail;
+                    if (image == null) {
+                        if (loaded.error != null) {
+                            throw loaded.error;
+                        }
+                        // shared by several cells, so not abandoned along
+                        // with any single cell's binding
+                        image = decodeWithinBudget(modelItem, loaded.data, w, h, null);
+                        if (image == null) {
+                            throw new IOException("image not decoded: " + modelItem);
+                        }
+                        writeThumbnail(modelItem, w, h, image);
+                    }
+                    keepDecoded(cache, key, image);
+                    return image;
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable poolLoad) {
+                    try {
+                        load(modelItem, w, h, true, null, loaded, poolLoad);
+                    } catch (RejectedExecutionException e) {
+                        // shut down; complete the pool's load with the error
+                        loaded.error = e;
+                        poolLoad.run();
+                    }
+                }
+            });
+            cell.poolReference = ref;
+            if (ref.isDone()) {
+                Image image = ref.getIfDone();
+                if (image == null) {
+                    cell.setFailed();
+                } else {
+                    cell.setImage(image, false);
+                    if (cache != null) {
+                        cell.pin(cache, key);
+                    }
+                }
+                return;
+            }
+            if (coarseFirst) {
+                cell.loadFuture = submitDecode(cell, binding, serial, modelItem, w, h, true, false, cache, key);
+            }
+            ref.whenDone(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(cell, binding, serial, ref.getIfDone(), false, cache, key);
+                }
+            });
+        } else {
+            cell.loadFuture = submitDecode(cell, binding, serial, modelItem, w, h, coarseFirst, true, cache, key);
+        }
+    }
+
+    private Future<?> submitDecode(final ImageCell cell, final CellBinding binding, final int serial, final Object modelItem,
+            final int w, final int h, final boolean coarse, final boolean full, final ContentCache<Object, Image> cache, final Object key) {
+        final LoadedSource loaded = new LoadedSource();
+        Future<?> future = load(modelItem, w, h, full, binding, loaded, new Runnable() {
+            @Override
+            public void run() {
+                if (loaded.thumbnail != null) {
+                    keepDecoded(cache, key, loaded.thumbnail);
+                    deliver(cell, binding, serial, loaded.thumbnail, false, cache, key);
+                    return;
+                }
+                if (loaded.error != null) {
+                    deliver(cell, binding, serial, null, false, null, null);
+                    return;
+                }
+                if (coarse) {
+                    try {
+                        Image preview = decodeWithinBudget(modelItem, loaded.data, w / COARSE_DIVISOR, h / COARSE_DIVISOR, binding);
+                        if (preview != null) {
+                            deliver(cell, binding, serial, preview, true, null, null);
+                        }
+                    } catch (Exception e) {
+                        // try the full size anyway
+                    }
+                    if (!full || !binding.isValid()) {
+                        return;
+                    }
+                }
+                Image image = null;
+                try {
+                    BufferedImage decoded = decodeWithinBudget(modelItem, loaded.data, w, h, binding);
+                    if (decoded == null) {
+                        if (binding != null && !binding.isValid()) {
+                            // abandoned, the cell has been recycled
+                            return;
+                        }
+                        throw new IOException("image not decoded: " + modelItem);
+                    }
+                    writeThumbnail(modelItem, w, h, decoded);
+                    keepDecoded(cache, key, decoded);
+                    image = decoded;
+                } catch (Exception e) {
+                    // the cell displays the error state
+                }
+                deliver(cell, binding, serial, image, false, cache, key);
+            }
+        });
+        if (binding != null) {
+            binding.cancelOnUnbind(future);
+        }
+        return future;
+    }
+
+    private void deliver(final ImageCell cell, CellBinding binding, final int serial, final Image image, final boolean coarse,
+            final ContentCache<Object, Image> cache, final Object key) {
+        Runnable update = new Runnable() {
+            @Override
+            public void run() {
+                if (cell.serial == serial) {
+                    if (coarse) {
+                        // the full image may have been faster (e.g. if it
+                        // was already being loaded for another cell)
+                        if (cell.image == null || cell.preview) {
+                            cell.setImage(image, true);
+                        }
+                    } else {
+                        cell.loadFuture = null;
+                        if (image == null) {
+                            cell.setFailed();
+                        } else {
+                            cell.setImage(image, false);
+                            if (cache != null) {
+                                cell.pin(cache, key);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+        if (binding != null) {
+            binding.publish(update);
+        } else {
+            EdtBatchDispatcher.getDefault().dispatch(update);
+        }
+    }
+
+    /**
+     * Cell component displaying an image, centered and scaled down to fit if
+     * necessary.
+     */
+    public static class ImageCell extends JComponent {
+
+        private Image image;
+        // image is a coarse preview, to be stretched to the cell size
+        private boolean preview;
+        private boolean failed;
+        private Future<?> loadFuture;
+        // reference to the shared image, if the factory has a pool
+        private SharedContentPool.Reference<Image> poolReference;
+        // cache entry of the displayed image, pinned while it's displayed
+        private ContentCache<Object, Image> pinnedCache;
+        private Object pinnedKey;
+        // store the displayed image was acquired from, to be released to
+        // once it's no longer displayed
+        private OffHeapRasterStore<Object> imageStore;
+        // incremented whenever the cell is rebound, so results of outdated
+        // decoding jobs can be recognized
+        private int serial = 0;
+
+        public ImageCell() {
+            setOpaque(true);
+        }
+
+        public Image getImage() {
+            return image;
+        }
+
+        /**
+         *
+         * @return whether the displayed image is just a coarse preview
+         */
+        public boolean isPreview() {
+            return preview;
+        }
+
+        /**
+         *
+         * @return whether the image couldn't be loaded
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        private void setImage(Image image, boolean preview) {
+            if (image != this.image) {
+                releaseStoredImage();
+            }
+            this.image = image;
+            this.preview = preview;
+            this.failed = false;
+            repaint();
+        }
+
+        private void setStoredImage(BufferedImage image, OffHeapRasterStore<Object> store) {
+            setImage(image, false);
+            imageStore = store;
+        }
+
+        private void releaseStoredImage() {
+            if (imageStore != null) {
+                imageStore.releaseImage((BufferedImage) image);
+                imageStore = null;
+            }
+        }
+
+        private void setFailed() {
+            releaseStoredImage();
+            this.image = null;
+            this.preview = false;
+            this.failed = true;
+            repaint();
+        }
+
+        private void pin(ContentCache<Object, Image> cache, Object key) {
+            unpin();
+            cache.pin(key);
+            pinnedCache = cache;
+            pinnedKey = key;
+        }
+
+        private void unpin() {
+            if (pinnedCache != null) {
+                pinnedCache.unpin(pinnedKey);
+                pinnedCache = null;
+                pinnedKey = null;
+            }
+        }
+
+        private void unbind(boolean keepImage) {
+            if (loadFuture != null) {
+                loadFuture.cancel(false);
+                loadFuture = null;
+            }
+            serial++;
+            unpin();
+            if (poolReference != null) {
+                poolReference.release();
+                poolReference = null;
+            }
+            if (!keepImage) {
+                releaseStoredImage();
+                image = null;
+                preview = false;
+                failed = false;
+                repaint();
+            }
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Insets insets = getInsets();
+            int w = getWidth() - insets.left - insets.right;
+            int h = getHeight() - insets.top - insets.bottom;
+            if (isOpaque()) {
+                g.setColor(getBackground());
+                g.fillRect(0, 0, getWidth(), getHeight());
+            }
+            if (image != null) {
+                int iw = image.getWidth(null), ih = image.getHeight(null);
+                // while the list is being resized, just stretch the image
+                // (which was decoded for the old size) as cheaply as possible
+                JGridList list = (JGridList) SwingUtilities.getAncestorOfClass(JGridList.class, this);
+                boolean adjusting = (list != null && list.isCellSizeAdjusting());
+                double scale = Math.min((double) w / iw, (double) h / ih);
+                if (!adjusting && !preview) {
+                    scale = Math.min(1.0, scale);
+                }
+                int dw = (int) Math.round(iw * scale), dh = (int) Math.round(ih * scale);
+                Graphics2D g2 = (Graphics2D) g;
+                if (adjusting) {
+                    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+                } else if (scale != 1.0) {
+                    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                }
+                g2.drawImage(image, insets.left + (w - dw) / 2, insets.top + (h - dh) / 2, dw, dh, null);
+            } else if (failed || loadFuture != null || poolReference != null) {
+                String text = failed ? "?" : "...";
+                g.setColor(getForeground());
+                int tw = g.getFontMetrics().stringWidth(text);
+                g.drawString(text, insets.left + (w - tw) / 2, insets.top + h / 2);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,464 @@
+package de.sofd.swing.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Store for decoded thumbnail pixel data that keeps the pixels outside of the
+ * Java heap, in direct {@link ByteBuffer} slabs. Meant for caching large
+ * numbers of thumbnails that are rarely accessed once they've been scrolled
+ * out of view, without burdening the garbage collector with them.
+ * <p>
+ * Pixels are stored as 32 bit ARGB values. Each stored raster occupies a
+ * block of the smallest power-of-two size class (starting at 4 KB) that it
+ * fits in; each slab holds blocks of one size class only. The total size of
+ * all allocated slabs never exceeds the store's budget: If a raster doesn't
+ * fit, least recently used rasters are evicted until it does, and slabs whose
+ * blocks have all become free are released. Released slabs are freed
+ * explicitly rather than by the garbage collector, so
+ * {@link #getAllocatedBytes()} is the off-heap memory actually held (unless
+ * the JVM doesn't allow freeing direct buffers explicitly, see
+ * {@link #isExplicitFreeSupported()}).
+ * <p>
+ * For displaying a raster, a cell component
+ * {@link #acquireImage(Object) acquires} an on-heap image containing a copy
+ * of the pixels, and {@link #releaseImage(BufferedImage) releases} it again
+ * when the cell is unbound. Released images are kept in a small pool and
+ * reused for later acquisitions of rasters of the same size, so only about as
+ * many on-heap images exist as there are visible cells.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @param <K>
+ *            key type
+ */
+public class OffHeapRasterStore<K> {
+
+    private static final int MIN_BLOCK_SIZE = 4096;
+    private static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    private static class Slab {
+        final ByteBuffer buffer;
+        final int sizeClass;
+        int usedBlocks = 0;
+
+        Slab(int size, int sizeClass) {
+            this.buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            this.sizeClass = sizeClass;
+        }
+
+        int getBlockCount() {
+            return buffer.capacity() / (MIN_BLOCK_SIZE << sizeClass);
+        }
+    }
+
+    private static class Block {
+        final Slab slab;
+        final int offset;
+
+        Block(Slab slab, int offset) {
+            this.slab = slab;
+            this.offset = offset;
+        }
+    }
+
+    private static class Entry {
+        final Block block;
+        final int width, height;
+
+        Entry(Block block, int width, int height) {
+            this.block = block;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final long maxBytes;
+    private final int slabSize;
+    private final int maxPooledImages;
+
+    private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<K, Entry>(16, 0.75f, true);
+    private final List<ArrayDeque<Block>> freeBlocks = new ArrayList<ArrayDeque<Block>>();
+    private final Set<Slab> slabs = new HashSet<Slab>();
+    private long allocatedBytes = 0;
+    private long usedBytes = 0;
+    private long evictionCount = 0;
+
+    // pool of released on-heap images, by size
+    private final Map<Long, ArrayDeque<BufferedImage>> imagePool = new HashMap<Long, ArrayDeque<BufferedImage>>();
+    private int pooledImageCount = 0;
+
+    /**
+     *
+     * @param maxBytes
+     *            budget: maximum total size of the allocated off-heap memory
+     * @param maxPooledImages
+     *            maximum number of released on-heap images to keep for reuse;
+     *            should be about the number of visible cells
+     */
+    public OffHeapRasterStore(long maxBytes, int maxPooledImages) {
+        if (maxBytes < 0 || maxPooledImages < 0) {
+            throw new IllegalArgumentException("maxBytes, maxPooledImages must be >= 0");
+        }
+        this.maxBytes = maxBytes;
+        this.slabSize = DEFAULT_SLAB_SIZE;
+        this.maxPooledImages = maxPooledImages;
+    }
+
+    /**
+     * Store the pixels of image under key, replacing any raster previously
+     * stored under key.
+     *
+     * @param key
+     * @param image
+     * @return true if the raster was stored, false if it's too large for the
+     *         store's budget
+     */
+    public boolean put(K key, BufferedImage image) {
+        int w = image.getWidth(), h = image.getHeight();
+        int[] pixels;
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB && image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && ((DataBufferInt) image.getRaster().getDataBuffer()).getData().length == w * h) {
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        } else {
+            pixels = image.getRGB(0, 0, w, h, null, 0, w);
+        }
+        return put(key, w, h, pixels);
+    }
+
+    /**
+     * Store an ARGB raster under key, replacing any raster previously stored
+     * under key.
+     *
+     * @param key
+     * @param width
+     * @param height
+     * @param argbPixels
+     *            pixels, row by row; length must be at least width * height
+     * @return true if the raster was stored, false if it's too large for the
+     *         store's budget
+     */
+    public synchronized boolean put(K key, int width, int height, int[] argbPixels) {
+        remove(key);
+        int byteCount = 4 * width * height;
+        int sizeClass = getSizeClass(byteCount);
+        if (getSlabSize(sizeClass) > maxBytes) {
+            return false;
+        }
+        Block block = allocateBlock(sizeClass);
+        IntBuffer dest = intBufferFor(block, width * height);
+        dest.put(argbPixels, 0, width * height);
+        block.slab.usedBlocks++;
+        usedBytes += MIN_BLOCK_SIZE << sizeClass;
+        entries.put(key, new Entry(block, width, height));
+        return true;
+    }
+
+    public synchronized boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Remove the raster stored under key, if any.
+     *
+     * @param key
+     * @return whether there was a raster stored under key
+     */
+    public synchronized boolean remove(K key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        freeBlock(entry.block);
+        return true;
+    }
+
+    /**
+     * Remove all rasters and release all off-heap memory. The store remains
+     * usable afterwards.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        freeBlocks.clear();
+        for (Slab slab : slabs) {
+            freeDirectBuffer(slab.buffer);
+        }
+        slabs.clear();
+        allocatedBytes = usedBytes = 0;
+    }
+
+    /**
+     * Get an on-heap image (of type {@link BufferedImage#TYPE_INT_ARGB})
+     * containing a copy of the raster stored under key. The image is taken
+     * from the pool of released images if possible. It should be passed to
+     * {@link #releaseImage(BufferedImage)} when it's no longer displayed.
+     *
+     * @param key
+     * @return the image, or null if no raster is stored under key
+     */
+    public synchronized BufferedImage acquireImage(K key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        BufferedImage image;
+        ArrayDeque<BufferedImage> pooled = imagePool.get(sizeKey(entry.width, entry.height));
+        if (pooled != null && !pooled.isEmpty()) {
+            image = pooled.removeLast();
+            pooledImageCount--;
+        } else {
+            image = new BufferedImage(entry.width, entry.height, BufferedImage.TYPE_INT_ARGB);
+        }
+        int[] dest = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        intBufferFor(entry.block, entry.width * entry.height).get(dest, 0, entry.width * entry.height);
+        return image;
+    }
+
+    /**
+     * Copy the raster stored under key into dest.
+     *
+     * @param key
+     * @param dest
+     *            destination; length must be at least width * height of the
+     *            raster
+     * @return whether a raster was stored under key
+     */
+    public synchronized boolean copyPixels(K key, int[] dest) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        intBufferFor(entry.block, entry.width * entry.height).get(dest, 0, entry.width * entry.height);
+        return true;
+    }
+
+    /**
+     * Return an image obtained from {@link #acquireImage(Object)} to the pool.
+     * The caller must not use the image afterwards.
+     *
+     * @param image
+     */
+    public synchronized void releaseImage(BufferedImage image) {
+        if (pooledImageCount >= maxPooledImages || image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            return;
+        }
+        Long sizeKey = sizeKey(image.getWidth(), image.getHeight());
+        ArrayDeque<BufferedImage> pooled = imagePool.get(sizeKey);
+        if (pooled == null) {
+            pooled = new ArrayDeque<BufferedImage>();
+            imagePool.put(sizeKey, pooled);
+        }
+        pooled.addLast(image);
+        pooledImageCount++;
+    }
+
+    /**
+     *
+     * @param key
+     * @return width of the raster stored under key, or -1 if there is none
+     */
+    public synchronized int getWidth(K key) {
+        Entry entry = entries.get(key);
+        return entry == null ? -1 : entry.width;
+    }
+
+    /**
+     *
+     * @param key
+     * @return height of the raster stored under key, or -1 if there is none
+     */
+    public synchronized int getHeight(K key) {
+        Entry entry = entries.get(key);
+        return entry == null ? -1 : entry.height;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     *
+     * @return total size of the currently allocated slabs
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     *
+     * @return total size of the blocks occupied by the stored rasters
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     *
+     * @return whether released slabs are freed immediately. If not, their
+     *         memory is only freed once the garbage collector finds them, and
+     *         may still be held although it's no longer counted in
+     *         {@link #getAllocatedBytes()}
+     */
+    public static boolean isExplicitFreeSupported() {
+        return BUFFER_FREER != null;
+    }
+
+    private static int getSizeClass(int byteCount) {
+        int sizeClass = 0;
+        while ((MIN_BLOCK_SIZE << sizeClass) < byteCount) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    private int getSlabSize(int sizeClass) {
+        return Math.max(slabSize, MIN_BLOCK_SIZE << sizeClass);
+    }
+
+    private static Long sizeKey(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    private IntBuffer intBufferFor(Block block, int intCount) {
+        ByteBuffer bb = block.slab.buffer.duplicate().order(ByteOrder.nativeOrder());
+        bb.position(block.offset);
+        bb.limit(block.offset + 4 * intCount);
+        return bb.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private ArrayDeque<Block> getFreeBlocks(int sizeClass) {
+        while (freeBlocks.size() <= sizeClass) {
+            freeBlocks.add(new ArrayDeque<Block>());
+        }
+        return freeBlocks.get(sizeClass);
+    }
+
+    /**
+     * Get a free block of the given size class, allocating a new slab and
+     * evicting least recently used rasters as necessary.
+     */
+    private Block allocateBlock(int sizeClass) {
+        ArrayDeque<Block> free = getFreeBlocks(sizeClass);
+        int newSlabSize = getSlabSize(sizeClass);
+        Iterator<Map.Entry<K, Entry>> lru = entries.entrySet().iterator();
+        while (free.isEmpty() && allocatedBytes + newSlabSize > maxBytes) {
+            // can't fail: once all rasters are evicted, all slabs are released
+            Map.Entry<K, Entry> eldest = lru.next();
+            lru.remove();
+            freeBlock(eldest.getValue().block);
+            evictionCount++;
+        }
+        if (free.isEmpty()) {
+            Slab slab = new Slab(newSlabSize, sizeClass);
+            slabs.add(slab);
+            allocatedBytes += newSlabSize;
+            int blockSize = MIN_BLOCK_SIZE << sizeClass;
+            for (int i = 0; i < slab.getBlockCount(); i++) {
+                free.addLast(new Block(slab, i * blockSize));
+            }
+        }
+        return free.removeFirst();
+    }
+
+    private void freeBlock(Block block) {
+        Slab slab = block.slab;
+        slab.usedBlocks--;
+        usedBytes -= MIN_BLOCK_SIZE << slab.sizeClass;
+        ArrayDeque<Block> free = getFreeBlocks(slab.sizeClass);
+        if (slab.usedBlocks == 0) {
+            // release the whole slab
+            for (Iterator<Block> it = free.iterator(); it.hasNext();) {
+                if (it.next().slab == slab) {
+                    it.remove();
+                }
+            }
+            slabs.remove(slab);
+            allocatedBytes -= slab.buffer.capacity();
+            freeDirectBuffer(slab.buffer);
+        } else {
+            free.addFirst(block);
+        }
+    }
+
+    /**
+     * Frees direct buffers without waiting for the garbage collector, using
+     * sun.misc.Unsafe#invokeCleaner on Java 9 and later, and the buffer's
+     * cleaner before.
+     */
+    private static abstract class BufferFreer {
+        abstract void free(ByteBuffer buffer) throws Exception;
+    }
+
+    private static final BufferFreer BUFFER_FREER = createBufferFreer();
+
+    private static BufferFreer createBufferFreer() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Object unsafe = theUnsafe.get(null);
+            return new BufferFreer() {
+                @Override
+                void free(ByteBuffer buffer) throws Exception {
+                    invokeCleaner.invoke(unsafe, buffer);
+                }
+            };
+        } catch (Exception e) {
+            // not Java 9 or later
+        }
+        try {
+            ByteBuffer probe = ByteBuffer.allocateDirect(1);
+            final Method cleanerMethod = probe.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Method cleanMethod = cleanerMethod.getReturnType().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            BufferFreer freer = new BufferFreer() {
+                @Override
+                void free(ByteBuffer buffer) throws Exception {
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleanMethod.invoke(cleaner);
+                    }
+                }
+            };
+            freer.free(probe);
+            return freer;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void freeDirectBuffer(ByteBuffer buffer) {
+        if (BUFFER_FREER != null) {
+            try {
+                BUFFER_FREER.free(buffer);
+            } catch (Exception e) {
+                // left to the garbage collector
+            }
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package de.sofd.swing.thumbnail;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes images at (about) the resolution they're going to be displayed
+ * at, rather than at full resolution. Uses
+ * {@link ImageReadParam#setSourceSubsampling(int, int, int, int) source
+ * subsampling} with the largest factor that still yields at least the
+ * target resolution, so readers that support it (most do) skip the pixels
+ * that aren't needed, and decoding a thumbnail of a large image takes a
+ * fraction of the time and memory of decoding the whole image. In
+ * crop-to-fill mode, only the source region that's actually displayed is
+ * read. The subsampled image is then scaled to the exact target size.
+ */
+public class SubsampledImageDecoder {
+
+    private SubsampledImageDecoder() {
+    }
+
+    /**
+     * Decode an image so that it fits into a maxWidth x maxHeight cell.
+     *
+     * @param input
+     *            image source: a File, InputStream, {@link ImageInputStream}
+     *            (which is not closed), or anything else
+     *            {@link ImageIO#createImageInputStream(Object)} accepts
+     * @param maxWidth
+     * @param maxHeight
+     * @param cropToFill
+     *            if false, the whole image is scaled to fit into the cell,
+     *            keeping its aspect ratio. If true, the image is scaled to
+     *            fill the whole cell, and the parts that stick out are cropped
+     * @return the decoded image, of type {@link BufferedImage#TYPE_INT_ARGB}.
+     *         Images that already fit aren't enlarged
+     * @throws IOException
+     *             if the input couldn't be read or no reader supports it
+     */
+    public static BufferedImage decode(Object input, int maxWidth, int maxHeight, boolean cropToFill) throws IOException {
+        ImageInputStream iis = (input instanceof ImageInputStream ? (ImageInputStream) input : ImageIO.createImageInputStream(input));
+        if (iis == null) {
+            throw new IOException("can't read from " + input);
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new IOException("no suitable image reader for " + input);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int w = reader.getWidth(0), h = reader.getHeight(0);
+                Rectangle region = new Rectangle(0, 0, w, h);
+                if (cropToFill) {
+                    // largest centered region with the cell's aspect ratio
+                    double cellAspect = (double) maxWidth / maxHeight;
+                    if ((double) w / h > cellAspect) {
+                        region.width = Math.max(1, (int) Math.round(h * cellAspect));
+                        region.x = (w - region.width) / 2;
+                    } else {
+                        region.height = Math.max(1, (int) Math.round(w / cellAspect));
+                        region.y = (h - region.height) / 2;
+                    }
+                }
+                int subsampling = getSubsampling(region.width, region.height, maxWidth, maxHeight);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (cropToFill) {
+                    param.setSourceRegion(region);
+                }
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return scaleToFit(reader.read(0, param), maxWidth, maxHeight);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            if (iis != input) {
+                iis.close();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param width
+     *            source width
+     * @param height
+     *            source height
+     * @param maxWidth
+     * @param maxHeight
+     * @return the largest subsampling factor that, applied to a width x height
+     *         image, yields an image that's still at least as large as that
+     *         image scaled to fit into maxWidth x maxHeight
+     */
+    public static int getSubsampling(int width, int height, int maxWidth, int maxHeight) {
+        return Math.max(1, (int) Math.floor(Math.max((double) width / maxWidth, (double) height / maxHeight)));
+    }
+
+    /**
+     * Scale image down so it fits into a maxWidth x maxHeight cell, keeping
+     * its aspect ratio. Images that already fit aren't enlarged.
+     *
+     * @param image
+     * @param maxWidth
+     * @param maxHeight
+     * @return scaled image of type {@link BufferedImage#TYPE_INT_ARGB}
+     */
+    public static BufferedImage scaleToFit(BufferedImage image, int maxWidth, int maxHeight) {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight()));
+        int w = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        if (w == image.getWidth() && h == image.getHeight() && image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+        BufferedImage result = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+}
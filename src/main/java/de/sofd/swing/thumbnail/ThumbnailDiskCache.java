@@ -0,0 +1,458 @@
+package de.sofd.swing.thumbnail;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent thumbnail cache stored in a single memory-mapped file, so that
+ * thumbnails decoded in an earlier session can be displayed immediately
+ * without decoding the source images again.
+ * <p>
+ * Thumbnails are stored as 32 bit ARGB rasters under a stable item
+ * identifier (e.g. a file path or SOP instance UID) together with a hash of
+ * the source content (e.g. derived from the file's size and modification
+ * time). A lookup only succeeds if the hash matches, so thumbnails of
+ * changed sources are never returned.
+ * <p>
+ * The file is mapped in fixed-size segments (64 MB by default) and records
+ * are appended, never overwritten; a record never spans two segments. The
+ * in-memory index is rebuilt by scanning the records when the file is
+ * opened. Storing a thumbnail for an identifier that already has one leaves
+ * the old record in the file as garbage; {@link #clear()} discards
+ * everything. The file never shrinks while it's open, because truncating it
+ * would invalidate the mapped segments.
+ * <p>
+ * {@link #getPixels(String, long)} returns a view of the mapped file
+ * contents, without copying. Such views must not be used after the cache has
+ * been {@link #clear() cleared} or {@link #close() closed}.
+ * <p>
+ * Instances are thread-safe. The file can't be opened by more than one
+ * instance (or process) at a time; it's locked while it's open.
+ */
+public class ThumbnailDiskCache {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int FILE_MAGIC = 0x53465443; // "SFTC"
+    private static final int FILE_VERSION = 1;
+    private static final int RECORD_MAGIC = 0x54484D42;
+    private static final int PADDING_MAGIC = 0x50414444;
+    // magic, version, segment size, data end
+    private static final int FILE_HEADER_SIZE = 4 + 4 + 4 + 8;
+    // magic, total length, content hash, width, height, key length
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // canonical paths of the files opened by instances in this JVM
+    private static final Set<String> OPEN_FILES = new HashSet<String>();
+
+    private static class IndexEntry {
+        final long contentHash;
+        final long position; // of the record's pixels
+        final int width, height;
+
+        IndexEntry(long contentHash, long position, int width, int height) {
+            this.contentHash = contentHash;
+            this.position = position;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final File file;
+    private final String canonicalPath;
+    private final int segmentSize;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private FileLock lock;
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+    private final Map<String, IndexEntry> index = new HashMap<String, IndexEntry>();
+    private long dataEnd;
+
+    /**
+     * Open (or create) the cache in file, using the default segment size.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public ThumbnailDiskCache(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open (or create) the cache in file. An existing file that isn't a valid
+     * cache file, or that was created with a different segment size, is
+     * discarded.
+     *
+     * @param file
+     * @param segmentSize
+     *            size of the mapped segments; also the maximum size of a
+     *            single thumbnail record
+     * @throws IOException
+     *             also if the file is already open in another instance or
+     *             process
+     */
+    public ThumbnailDiskCache(File file, int segmentSize) throws IOException {
+        if (segmentSize < 4096 || segmentSize % 4 != 0) {
+            throw new IllegalArgumentException("illegal segment size: " + segmentSize);
+        }
+        this.file = file;
+        this.segmentSize = segmentSize;
+        // file locks are held per process, and closing any channel of the
+        // file may release them, so files opened by this JVM are checked
+        // before even opening them
+        canonicalPath = file.getCanonicalPath();
+        synchronized (OPEN_FILES) {
+            if (!OPEN_FILES.add(canonicalPath)) {
+                throw new IOException("thumbnail cache file is in use: " + file);
+            }
+        }
+        boolean opened = false;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            lock = channel.tryLock();
+            if (lock == null) {
+                throw new IOException("thumbnail cache file is in use by another process: " + file);
+            }
+            if (!readIndex()) {
+                initEmptyFile();
+            }
+            opened = true;
+        } finally {
+            if (!opened) {
+                if (raf != null) {
+                    raf.close();
+                }
+                synchronized (OPEN_FILES) {
+                    OPEN_FILES.remove(canonicalPath);
+                }
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Identifier under which the thumbnail of an image file, scaled to fit
+     * into a cell of the given size, is stored. Used by all writers and
+     * readers of thumbnails of image files, so they find each other's
+     * thumbnails.
+     *
+     * @param imageFile
+     * @param cellWidth
+     * @param cellHeight
+     * @return the identifier
+     */
+    public static String getThumbnailId(File imageFile, int cellWidth, int cellHeight) {
+        return imageFile.getAbsolutePath() + "#" + cellWidth + "x" + cellHeight;
+    }
+
+    /**
+     *
+     * @param imageFile
+     * @return content hash of imageFile, derived from its size and
+     *         modification time (so computing it doesn't require reading the
+     *         file)
+     */
+    public static long getContentHash(File imageFile) {
+        return imageFile.length() * 31 + imageFile.lastModified();
+    }
+
+    /**
+     *
+     * @param id
+     * @param contentHash
+     * @return whether a thumbnail for id with the given content hash is
+     *         stored
+     */
+    public synchronized boolean contains(String id, long contentHash) {
+        return getIndexEntry(id, contentHash) != null;
+    }
+
+    /**
+     *
+     * @param id
+     * @param contentHash
+     * @return width of the thumbnail stored for id and contentHash, or -1 if
+     *         there is none
+     */
+    public synchronized int getWidth(String id, long contentHash) {
+        IndexEntry e = getIndexEntry(id, contentHash);
+        return e == null ? -1 : e.width;
+    }
+
+    /**
+     *
+     * @param id
+     * @param contentHash
+     * @return height of the thumbnail stored for id and contentHash, or -1 if
+     *         there is none
+     */
+    public synchronized int getHeight(String id, long contentHash) {
+        IndexEntry e = getIndexEntry(id, contentHash);
+        return e == null ? -1 : e.height;
+    }
+
+    /**
+     * Zero-copy access to a stored thumbnail.
+     *
+     * @param id
+     * @param contentHash
+     * @return read-only view of the ARGB pixels (row by row) of the thumbnail
+     *         stored for id and contentHash, directly on the mapped file, or
+     *         null if there is none
+     * @throws IOException
+     */
+    public synchronized IntBuffer getPixels(String id, long contentHash) throws IOException {
+        IndexEntry e = getIndexEntry(id, contentHash);
+        if (e == null) {
+            return null;
+        }
+        return sliceAt(e.position, 4 * e.width * e.height).asIntBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Read a stored thumbnail into a new image.
+     *
+     * @param id
+     * @param contentHash
+     * @return image of type {@link BufferedImage#TYPE_INT_ARGB} containing a
+     *         copy of the thumbnail stored for id and contentHash, or null if
+     *         there is none
+     * @throws IOException
+     */
+    public synchronized BufferedImage readImage(String id, long contentHash) throws IOException {
+        IndexEntry e = getIndexEntry(id, contentHash);
+        if (e == null) {
+            return null;
+        }
+        // copied under the lock, so clear() can't reuse the space meanwhile
+        BufferedImage result = new BufferedImage(e.width, e.height, BufferedImage.TYPE_INT_ARGB);
+        getPixels(id, contentHash).get(((DataBufferInt) result.getRaster().getDataBuffer()).getData(), 0, e.width * e.height);
+        return result;
+    }
+
+    /**
+     * Store the pixels of image as the thumbnail for id and contentHash.
+     *
+     * @param id
+     * @param contentHash
+     * @param image
+     * @throws IOException
+     */
+    public void put(String id, long contentHash, BufferedImage image) throws IOException {
+        int w = image.getWidth(), h = image.getHeight();
+        put(id, contentHash, w, h, image.getRGB(0, 0, w, h, null, 0, w));
+    }
+
+    /**
+     * Store an ARGB raster as the thumbnail for id and contentHash, replacing
+     * any thumbnail previously stored for id.
+     *
+     * @param id
+     * @param contentHash
+     * @param width
+     * @param height
+     * @param argbPixels
+     *            pixels, row by row; length must be at least width * height
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if the record would be larger than the segment size
+     */
+    public synchronized void put(String id, long contentHash, int width, int height, int[] argbPixels) throws IOException {
+        byte[] key = id.getBytes(UTF8);
+        int headerLength = RECORD_HEADER_SIZE + align4(key.length);
+        long recordLength = headerLength + 4L * width * height;
+        if (recordLength > segmentSize) {
+            throw new IllegalArgumentException("thumbnail too large: " + width + "x" + height);
+        }
+        long position = dataEnd;
+        long segmentEnd = (position / segmentSize + 1) * segmentSize;
+        if (position + recordLength > segmentEnd) {
+            // doesn't fit into the current segment; skip the rest of it
+            ByteBuffer pad = sliceAt(position, (int) (segmentEnd - position));
+            if (pad.remaining() >= 8) {
+                pad.putInt(PADDING_MAGIC);
+                pad.putInt((int) (segmentEnd - position));
+            }
+            position = segmentEnd;
+        }
+        ByteBuffer record = sliceAt(position, (int) recordLength);
+        record.putInt(0); // magic written last, so incomplete records are never read back
+        record.putInt((int) recordLength);
+        record.putLong(contentHash);
+        record.putInt(width);
+        record.putInt(height);
+        record.putInt(key.length);
+        record.put(key);
+        record.position(headerLength);
+        record.asIntBuffer().put(argbPixels, 0, width * height);
+        record.putInt(0, RECORD_MAGIC);
+        dataEnd = position + recordLength;
+        segment(0).putLong(12, dataEnd);
+        index.put(id, new IndexEntry(contentHash, position + headerLength, width, height));
+    }
+
+    /**
+     * Remove all thumbnails. The space they used is reused for new
+     * thumbnails; the file isn't truncated, so the mapped segments stay
+     * valid.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        index.clear();
+        initEmptyFile();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     *
+     * @return number of bytes used in the file, including garbage
+     */
+    public synchronized long getDataSize() {
+        return dataEnd;
+    }
+
+    /**
+     * Write all changes to the disk.
+     */
+    public synchronized void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flush and close the file. Views returned by
+     * {@link #getPixels(String, long)} become invalid.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (raf == null) {
+            return;
+        }
+        flush();
+        segments.clear();
+        index.clear();
+        lock.release();
+        lock = null;
+        raf.close();
+        raf = null;
+        channel = null;
+        synchronized (OPEN_FILES) {
+            OPEN_FILES.remove(canonicalPath);
+        }
+    }
+
+    private IndexEntry getIndexEntry(String id, long contentHash) {
+        IndexEntry e = index.get(id);
+        return e != null && e.contentHash == contentHash ? e : null;
+    }
+
+    private void initEmptyFile() throws IOException {
+        ByteBuffer header = segment(0);
+        header.putInt(0, FILE_MAGIC);
+        header.putInt(4, FILE_VERSION);
+        header.putInt(8, segmentSize);
+        dataEnd = FILE_HEADER_SIZE;
+        header.putLong(12, dataEnd);
+    }
+
+    /**
+     * Rebuild the index from the file.
+     *
+     * @return false if the file isn't a valid cache file
+     */
+    private boolean readIndex() throws IOException {
+        if (channel.size() < FILE_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) != FILE_MAGIC || header.getInt(4) != FILE_VERSION || header.getInt(8) != segmentSize) {
+            // overwritten by initEmptyFile(); the old contents beyond the
+            // header are never read back
+            return false;
+        }
+        long end = Math.min(header.getLong(12), channel.size());
+        long position = FILE_HEADER_SIZE;
+        while (position + 8 <= end) {
+            long segmentEnd = (position / segmentSize + 1) * segmentSize;
+            if (segmentEnd - position < 8) {
+                // too short for a padding record, see put()
+                position = segmentEnd;
+                continue;
+            }
+            ByteBuffer buf = sliceAt(position, (int) Math.min(RECORD_HEADER_SIZE, end - position));
+            int magic = buf.getInt();
+            int length = buf.getInt();
+            if (length <= 0 || position + length > end) {
+                break;
+            }
+            if (magic == RECORD_MAGIC) {
+                long contentHash = buf.getLong();
+                int w = buf.getInt();
+                int h = buf.getInt();
+                int keyLength = buf.getInt();
+                ByteBuffer keyBuf = sliceAt(position + RECORD_HEADER_SIZE, keyLength);
+                byte[] key = new byte[keyLength];
+                keyBuf.get(key);
+                index.put(new String(key, UTF8),
+                          new IndexEntry(contentHash, position + RECORD_HEADER_SIZE + align4(keyLength), w, h));
+            } else if (magic != PADDING_MAGIC) {
+                break;
+            }
+            position += length;
+        }
+        dataEnd = position;
+        return true;
+    }
+
+    /**
+     * @return buffer of length bytes starting at file position position,
+     *         which must not span segments
+     */
+    private ByteBuffer sliceAt(long position, int length) throws IOException {
+        ByteBuffer buf = segment((int) (position / segmentSize)).duplicate();
+        int offset = (int) (position % segmentSize);
+        buf.position(offset);
+        buf.limit(offset + length);
+        return buf.slice();
+    }
+
+    private MappedByteBuffer segment(int i) throws IOException {
+        while (segments.size() <= i) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentSize, segmentSize));
+        }
+        return segments.get(i);
+    }
+
+    private static int align4(int n) {
+        return (n + 3) & ~3;
+    }
+
+}
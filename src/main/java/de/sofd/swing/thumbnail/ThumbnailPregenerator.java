@@ -0,0 +1,196 @@
+package de.sofd.swing.thumbnail;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Headless batch tool that walks a directory tree of images, generates
+ * thumbnails for a number of cell sizes in parallel, and writes them into a
+ * {@link ThumbnailDiskCache}, so that grid cell factories reading from that
+ * cache find them when the images are first displayed.
+ * <p>
+ * Thumbnails are stored under
+ * {@link ThumbnailDiskCache#getThumbnailId(File, int, int)} and
+ * {@link ThumbnailDiskCache#getContentHash(File)}, and decoded with
+ * {@link SubsampledImageDecoder}. Images whose thumbnails
+ * are already in the cache are skipped, so the tool can be re-run
+ * incrementally.
+ * <p>
+ * Usage:
+ * <pre>
+ * java de.sofd.swing.thumbnail.ThumbnailPregenerator &lt;imageDir&gt; &lt;cacheFile&gt; &lt;WxH&gt;[,&lt;WxH&gt;...] [&lt;threads&gt;]
+ * </pre>
+ */
+public class ThumbnailPregenerator {
+
+    // files per leaf task
+    private static final int FILES_PER_TASK = 4;
+
+    private final ThumbnailDiskCache cache;
+    private final List<Dimension> cellSizes;
+
+    private final AtomicInteger generatedCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    /**
+     *
+     * @param cache
+     *            cache to write the thumbnails to
+     * @param cellSizes
+     *            cell sizes to generate thumbnails for
+     */
+    public ThumbnailPregenerator(ThumbnailDiskCache cache, List<Dimension> cellSizes) {
+        this.cache = cache;
+        this.cellSizes = new ArrayList<Dimension>(cellSizes);
+    }
+
+    /**
+     * Generate the thumbnails of all image files in dir and its
+     * subdirectories.
+     *
+     * @param dir
+     * @param parallelism
+     *            number of worker threads
+     */
+    public void run(File dir, int parallelism) {
+        List<File> files = new ArrayList<File>();
+        collectImageFiles(dir, getImageSuffixes(), files);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new GenerateTask(files, 0, files.size()));
+        } finally {
+            pool.shutdown();
+        }
+        cache.flush();
+    }
+
+    public int getGeneratedCount() {
+        return generatedCount.get();
+    }
+
+    public int getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    private class GenerateTask extends RecursiveAction {
+        private final List<File> files;
+        private final int from, to;
+
+        GenerateTask(List<File> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FILES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    generate(files.get(i));
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new GenerateTask(files, from, mid), new GenerateTask(files, mid, to));
+            }
+        }
+    }
+
+    private void generate(File file) {
+        long hash = ThumbnailDiskCache.getContentHash(file);
+        for (Dimension size : cellSizes) {
+            String id = ThumbnailDiskCache.getThumbnailId(file, size.width, size.height);
+            if (cache.contains(id, hash)) {
+                skippedCount.incrementAndGet();
+                continue;
+            }
+            try {
+                // decoding each size separately with subsampling is cheaper
+                // than decoding the full image once
+                cache.put(id, hash, SubsampledImageDecoder.decode(file, size.width, size.height, false));
+                generatedCount.incrementAndGet();
+            } catch (Exception e) {
+                System.err.println("couldn't create thumbnail of " + file + ": " + e);
+                failedCount.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private static Set<String> getImageSuffixes() {
+        Set<String> result = new HashSet<String>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            result.add(suffix.toLowerCase(Locale.ENGLISH));
+        }
+        return result;
+    }
+
+    private static void collectImageFiles(File dir, Set<String> suffixes, List<File> result) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectImageFiles(child, suffixes, result);
+            } else {
+                String name = child.getName();
+                int dot = name.lastIndexOf('.');
+                if (dot != -1 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH))) {
+                    result.add(child);
+                }
+            }
+        }
+    }
+
+    private static Dimension parseSize(String s) {
+        int x = s.toLowerCase(Locale.ENGLISH).indexOf('x');
+        if (x == -1) {
+            throw new IllegalArgumentException("illegal cell size (expected WxH): " + s);
+        }
+        return new Dimension(Integer.parseInt(s.substring(0, x).trim()), Integer.parseInt(s.substring(x + 1).trim()));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("usage: ThumbnailPregenerator <imageDir> <cacheFile> <WxH>[,<WxH>...] [<threads>]");
+            System.exit(1);
+        }
+        System.setProperty("java.awt.headless", "true");
+        File dir = new File(args[0]);
+        List<Dimension> sizes = new ArrayList<Dimension>();
+        for (String s : args[2].split(",")) {
+            sizes.add(parseSize(s));
+        }
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(new File(args[1]));
+        try {
+            ThumbnailPregenerator generator = new ThumbnailPregenerator(cache, sizes);
+            long t0 = System.currentTimeMillis();
+            generator.run(dir, threads);
+            System.out.println("generated " + generator.getGeneratedCount() + ", skipped " + generator.getSkippedCount()
+                    + ", failed " + generator.getFailedCount() + " thumbnails in "
+                    + (System.currentTimeMillis() - t0) + " ms");
+        } finally {
+            cache.close();
+        }
+    }
+
+}
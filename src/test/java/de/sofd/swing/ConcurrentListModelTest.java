@@ -0,0 +1,229 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConcurrentListModelTest {
+
+    private ConcurrentListModel model;
+
+    /**
+     * copy of the model contents that's maintained purely from the events
+     */
+    private List<Object> mirror;
+
+    /**
+     * delivered events, as "added 0 4", "removed 2 3", "changed 0 9"
+     */
+    private List<String> events;
+
+    @Before
+    public void setUp() {
+        model = new ConcurrentListModel(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        mirror = new ArrayList<Object>(model.snapshot());
+        events = new ArrayList<String>();
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                events.add("added " + e.getIndex0() + " " + e.getIndex1());
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.add(i, model.getElementAt(i));
+                }
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("removed " + e.getIndex0() + " " + e.getIndex1());
+                mirror.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                events.add("changed " + e.getIndex0() + " " + e.getIndex1());
+                assertEquals(model.getSize(), mirror.size());
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.set(i, model.getElementAt(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * Run modifications on this (non-EDT) thread while the EDT is blocked, so
+     * they're all pending when the next flush runs, and wait until they have
+     * been delivered.
+     */
+    private void modifyWhileEdtBlocked(Runnable modifications) throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        blocked.await();
+        try {
+            modifications.run();
+            // nothing delivered while the EDT is blocked
+            assertTrue(events.isEmpty());
+        } finally {
+            release.countDown();
+        }
+        waitForEdt();
+    }
+
+    private static void waitForEdt() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    private void assertConsistent() {
+        assertEquals(model.snapshot(), mirror);
+        assertEquals(model.snapshot().size(), model.getSize());
+    }
+
+    @Test
+    public void testAdjacentChangesAreMerged() throws Exception {
+        modifyWhileEdtBlocked(new Runnable() {
+            @Override
+            public void run() {
+                // appended one by one
+                for (int i = 10; i < 15; i++) {
+                    model.add(i);
+                }
+                // inserted within the interval added before
+                model.add(12, 100);
+                // removed repeatedly at the same position and right before it
+                model.remove(5);
+                model.remove(5);
+                model.remove(4);
+                // adjacent changes
+                model.set(0, "a");
+                model.set(1, "b");
+            }
+        });
+        assertEquals(Arrays.asList("added 10 15", "removed 4 6", "changed 0 1"), events);
+        assertConsistent();
+    }
+
+    @Test
+    public void testChangesAreNotMergedAcrossGaps() throws Exception {
+        modifyWhileEdtBlocked(new Runnable() {
+            @Override
+            public void run() {
+                model.add(2, "x");
+                model.add(5, "y");
+                model.removeRange(7, 8);
+                model.removeRange(0, 0);
+            }
+        });
+        assertEquals(Arrays.asList("added 2 2", "added 5 5", "removed 7 8", "removed 0 0"), events);
+        assertConsistent();
+    }
+
+    @Test
+    public void testCollapseWithGrowingSize() throws Exception {
+        modifyWhileEdtBlocked(new Runnable() {
+            @Override
+            public void run() {
+                // scattered insertions that can't be merged
+                for (int i = 0; i < 300; i++) {
+                    model.add(2 * (i % 5), "x" + i);
+                }
+            }
+        });
+        // collapsed when the 257th change was recorded, the following ones
+        // are delivered one by one
+        List<String> expected = new ArrayList<String>();
+        expected.add("added 10 266");
+        expected.add("changed 0 9");
+        for (int i = 257; i < 300; i++) {
+            expected.add("added " + 2 * (i % 5) + " " + 2 * (i % 5));
+        }
+        assertEquals(expected, events);
+        assertEquals(310, model.getSize());
+        assertConsistent();
+    }
+
+    @Test
+    public void testCollapseWithShrinkingSize() throws Exception {
+        model.addAll(Arrays.asList(new Object[990]));
+        waitForEdt();
+        events.clear();
+        modifyWhileEdtBlocked(new Runnable() {
+            @Override
+            public void run() {
+                // every other element, each removal a separate change
+                for (int i = 0; i < 300; i++) {
+                    model.remove(i);
+                }
+            }
+        });
+        List<String> expected = new ArrayList<String>();
+        expected.add("removed 743 999");
+        expected.add("changed 0 742");
+        for (int i = 257; i < 300; i++) {
+            expected.add("removed " + i + " " + i);
+        }
+        assertEquals(expected, events);
+        assertEquals(700, model.getSize());
+        assertConsistent();
+    }
+
+    @Test
+    public void testModificationFromListenerIsDeliveredAfterwards() throws Exception {
+        final List<String> sizesSeen = new ArrayList<String>();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                model.addListDataListener(new ListDataListener() {
+                    @Override
+                    public void intervalAdded(ListDataEvent e) {
+                        sizesSeen.add("added " + model.getSize());
+                        if (model.getSize() == 11) {
+                            // reentrant modification, delivered after this event
+                            model.add(0, "nested");
+                            sizesSeen.add("after nested add " + model.getSize());
+                        }
+                    }
+
+                    @Override
+                    public void intervalRemoved(ListDataEvent e) {
+                    }
+
+                    @Override
+                    public void contentsChanged(ListDataEvent e) {
+                    }
+                });
+                model.add("outer");
+            }
+        });
+        assertEquals(Arrays.asList("added 11", "after nested add 11", "added 12"), sizesSeen);
+        assertEquals(Arrays.asList("added 10 10", "added 0 0"), events);
+        assertConsistent();
+        assertEquals("nested", model.getElementAt(0));
+        assertEquals("outer", model.getElementAt(11));
+    }
+
+}
@@ -0,0 +1,164 @@
+package de.sofd.swing;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ContentCacheTest {
+
+    private static final ContentCache.SizeEstimator<byte[]> BYTE_ARRAY_SIZE = new ContentCache.SizeEstimator<byte[]>() {
+        @Override
+        public long estimateSize(byte[] value) {
+            return value.length;
+        }
+    };
+
+    private ContentCache<String, byte[]> cache;
+    private List<String> evicted;
+    private List<byte[]> removed;
+
+    @Before
+    public void setUp() {
+        evicted = new ArrayList<String>();
+        removed = new ArrayList<byte[]>();
+        cache = new ContentCache<String, byte[]>(100, BYTE_ARRAY_SIZE) {
+            @Override
+            protected void entryEvicted(String key, byte[] value) {
+                evicted.add(key);
+            }
+
+            @Override
+            protected void entryRemoved(String key, byte[] value) {
+                removed.add(value);
+            }
+        };
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        assertNull(cache.get("a"));
+        cache.put("a", new byte[10]);
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("a"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(10, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testLruEvictionByBytes() {
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.get("a");
+        cache.put("c", new byte[40]);
+        // b was the least recently used one
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("a"));
+        assertTrue(cache.containsKey("c"));
+        assertEquals(80, cache.getCurrentBytes());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, evicted.size());
+        assertEquals("b", evicted.get(0));
+    }
+
+    @Test
+    public void testReplaceAndOversizedValues() {
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[60]);
+        assertEquals(60, cache.getCurrentBytes());
+        assertEquals(1, cache.size());
+        cache.put("huge", new byte[101]);
+        assertFalse(cache.containsKey("huge"));
+        assertTrue(cache.containsKey("a"));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEveryRemovalIsReported() {
+        byte[] a1 = new byte[40], a2 = new byte[30], b = new byte[30], c = new byte[50], huge = new byte[101];
+        cache.put("a", a1);
+        // putting the same value again doesn't remove it
+        cache.put("a", a1);
+        assertTrue(removed.isEmpty());
+        cache.put("a", a2);
+        assertEquals(1, removed.size());
+        assertSame(a1, removed.get(0));
+        cache.put("huge", huge);
+        assertSame(huge, removed.get(1));
+        cache.put("b", b);
+        assertSame(b, cache.remove("b"));
+        assertSame(b, removed.get(2));
+        assertNull(cache.remove("b"));
+        assertEquals(3, removed.size());
+        cache.put("b", b);
+        cache.put("c", c);
+        // a was evicted
+        assertEquals(1, evicted.size());
+        assertSame(a2, removed.get(3));
+        cache.clear();
+        assertEquals(6, removed.size());
+        assertEquals(0, cache.getCurrentBytes());
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testShrinkingBudget() {
+        for (int i = 0; i < 10; i++) {
+            cache.put("" + i, new byte[10]);
+        }
+        cache.setMaxBytes(35);
+        assertEquals(3, cache.size());
+        assertEquals(30, cache.getCurrentBytes());
+        assertTrue(cache.containsKey("9"));
+        assertEquals(7, cache.getEvictionCount());
+        cache.clear();
+        assertEquals(0, cache.getCurrentBytes());
+    }
+
+    @Test
+    public void testPinnedEntriesAreKept() {
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.pin("a");
+        cache.pin("a");
+        cache.put("c", new byte[40]);
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        cache.unpin("a");
+        assertTrue(cache.isPinned("a"));
+        cache.put("d", new byte[40]);
+        assertTrue(cache.containsKey("a"));
+        cache.unpin("a");
+        assertFalse(cache.isPinned("a"));
+        cache.put("e", new byte[40]);
+        assertFalse(cache.containsKey("a"));
+    }
+
+    @Test
+    public void testShrink() {
+        for (int i = 0; i < 10; i++) {
+            cache.put("" + i, new byte[10]);
+        }
+        cache.pin("0");
+        cache.shrink(0.25);
+        assertEquals(100, cache.getMaxBytes());
+        // the pinned, least recently used one counts against the target too
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsKey("0"));
+        assertTrue(cache.containsKey("9"));
+        assertEquals(8, evicted.size());
+    }
+
+    @Test
+    public void testImageSizeEstimator() {
+        assertEquals(4 * 10 * 20, ContentCache.IMAGE_SIZE_ESTIMATOR.estimateSize(new BufferedImage(10, 20, BufferedImage.TYPE_INT_ARGB)));
+        assertEquals(10 * 20, ContentCache.IMAGE_SIZE_ESTIMATOR.estimateSize(new BufferedImage(10, 20, BufferedImage.TYPE_BYTE_GRAY)));
+        assertEquals(2 * 10 * 20, ContentCache.IMAGE_SIZE_ESTIMATOR.estimateSize(new BufferedImage(10, 20, BufferedImage.TYPE_USHORT_GRAY)));
+    }
+
+}
@@ -0,0 +1,120 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DiffingListModelTest {
+
+    private DiffingListModel model;
+
+    /**
+     * copy of the model contents that's maintained purely from the events
+     */
+    private List<Object> mirror;
+
+    private List<String> events;
+
+    @Before
+    public void setUp() {
+        model = new DiffingListModel(new DiffingListModel.KeyProvider() {
+            @Override
+            public Object getKey(Object element) {
+                // "a1" and "a2" are different versions of the element with key "a"
+                return ((String) element).substring(0, 1);
+            }
+        });
+        mirror = new ArrayList<Object>();
+        events = new ArrayList<String>();
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                events.add("+" + e.getIndex0() + "-" + e.getIndex1());
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.add(i, model.getElementAt(i));
+                }
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("-" + e.getIndex0() + "-" + e.getIndex1());
+                mirror.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                events.add("*" + e.getIndex0() + "-" + e.getIndex1());
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.set(i, model.getElementAt(i));
+                }
+            }
+        });
+    }
+
+    private void replace(String... contents) {
+        events.clear();
+        model.replaceContents(Arrays.asList(contents));
+        assertEquals(Arrays.asList((Object[]) contents), model.getContents());
+        assertEquals(model.getContents(), mirror);
+    }
+
+    @Test
+    public void testInitialFill() {
+        replace("a1", "b1", "c1");
+        assertEquals(Arrays.asList("+0-2"), events);
+    }
+
+    @Test
+    public void testUnchanged() {
+        replace("a1", "b1", "c1");
+        replace("a1", "b1", "c1");
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testInsertRemoveChange() {
+        replace("a1", "b1", "c1", "d1", "e1");
+        replace("a1", "x1", "b1", "c2", "e1");
+        assertEquals(Arrays.asList("-3-3", "+1-1", "*3-3"), events);
+        assertEquals(0, model.getLastMoveCount());
+    }
+
+    @Test
+    public void testMove() {
+        replace("a1", "b1", "c1", "d1", "e1");
+        replace("a1", "c1", "d1", "e1", "b2");
+        assertEquals(Arrays.asList("-1-1", "+4-4"), events);
+        assertEquals(1, model.getLastMoveCount());
+    }
+
+    @Test
+    public void testRandomReplacements() {
+        Random r = new Random(42);
+        String keys = "abcdefghijklmnopqrstuvwxyz";
+        for (int round = 0; round < 200; round++) {
+            int n = r.nextInt(20);
+            String[] contents = new String[n];
+            for (int i = 0; i < n; i++) {
+                contents[i] = "" + keys.charAt(r.nextInt(8)) + r.nextInt(2);
+            }
+            replace(contents);
+        }
+    }
+
+    @Test
+    public void testLongestIncreasingSubsequence() {
+        boolean[] lis = DiffingListModel.longestIncreasingSubsequence(new int[] {3, -1, 0, 4, 1, 2, -1, 5});
+        assertTrue(Arrays.equals(new boolean[] {false, false, true, false, true, true, false, true}, lis));
+    }
+
+}
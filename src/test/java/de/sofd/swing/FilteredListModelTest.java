@@ -0,0 +1,226 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.DefaultListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FilteredListModelTest {
+
+    private DefaultListModel source;
+    private FilteredListModel model;
+
+    /**
+     * copy of the model contents that's maintained purely from the events
+     */
+    private List<Object> mirror;
+
+    private int eventCount;
+
+    private static class ModuloFilter implements FilteredListModel.Filter {
+        private final int modulo;
+
+        ModuloFilter(int modulo) {
+            this.modulo = modulo;
+        }
+
+        @Override
+        public boolean accept(Object element) {
+            return ((Integer) element) % modulo == 0;
+        }
+    }
+
+    /**
+     * source that can be changed silently and then announce an unspecific
+     * change of its contents
+     */
+    private static class Source extends DefaultListModel {
+        boolean silent;
+
+        void fireUnspecificChange() {
+            silent = false;
+            fireContentsChanged(this, -1, -1);
+        }
+
+        @Override
+        protected void fireIntervalAdded(Object source, int index0, int index1) {
+            if (!silent) {
+                super.fireIntervalAdded(source, index0, index1);
+            }
+        }
+
+        @Override
+        protected void fireIntervalRemoved(Object source, int index0, int index1) {
+            if (!silent) {
+                super.fireIntervalRemoved(source, index0, index1);
+            }
+        }
+
+        @Override
+        protected void fireContentsChanged(Object source, int index0, int index1) {
+            if (!silent) {
+                super.fireContentsChanged(source, index0, index1);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        source = new Source();
+        for (int i = 0; i < 100; i++) {
+            source.addElement(i);
+        }
+        model = new FilteredListModel(source, new ModuloFilter(3));
+        mirror = new ArrayList<Object>();
+        for (int i = 0; i < model.getSize(); i++) {
+            mirror.add(model.getElementAt(i));
+        }
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                eventCount++;
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.add(i, model.getElementAt(i));
+                }
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                eventCount++;
+                mirror.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                eventCount++;
+                assertEquals(model.getSize(), mirror.size());
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.set(i, model.getElementAt(i));
+                }
+            }
+        });
+    }
+
+    private void assertConsistent() {
+        List<Object> expected = new ArrayList<Object>();
+        for (int i = 0; i < source.getSize(); i++) {
+            Object elt = source.get(i);
+            if (model.getFilter() == null || model.getFilter().accept(elt)) {
+                expected.add(elt);
+            }
+        }
+        assertEquals(expected, mirror);
+        for (int i = 0; i < model.getSize(); i++) {
+            assertSame(model.getElementAt(i), source.get(model.convertViewIndexToSource(i)));
+            assertEquals(i, model.convertSourceIndexToView(model.convertViewIndexToSource(i)));
+        }
+    }
+
+    @Test
+    public void testInitialContents() {
+        assertEquals(34, model.getSize());
+        assertEquals(99, model.getElementAt(33));
+        assertEquals(-1, model.convertSourceIndexToView(1));
+        assertConsistent();
+    }
+
+    @Test
+    public void testSourceEventsAreTranslated() {
+        source.add(4, 300);
+        assertEquals(1, eventCount);
+        source.add(4, 301);
+        assertEquals(1, eventCount);
+        source.remove(0);
+        assertEquals(2, eventCount);
+        // 3 -> 302: accepted -> rejected
+        source.set(2, 302);
+        assertEquals(3, eventCount);
+        // 1 -> 5: rejected -> rejected
+        source.set(0, 5);
+        assertEquals(3, eventCount);
+        // 5 -> 6: rejected -> accepted
+        source.set(0, 6);
+        assertEquals(4, eventCount);
+        assertConsistent();
+    }
+
+    @Test
+    public void testRandomSourceChanges() {
+        Random r = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            int size = source.getSize();
+            switch (size == 0 ? 0 : r.nextInt(3)) {
+            case 0:
+                source.add(r.nextInt(size + 1), r.nextInt(1000));
+                break;
+            case 1:
+                source.remove(r.nextInt(size));
+                break;
+            default:
+                source.set(r.nextInt(size), r.nextInt(1000));
+            }
+        }
+        assertConsistent();
+    }
+
+    @Test
+    public void testSetFilter() {
+        model.setFilter(new ModuloFilter(6));
+        assertConsistent();
+        model.setFilter(new ModuloFilter(2));
+        assertConsistent();
+        model.setFilter(null);
+        assertConsistent();
+    }
+
+    @Test
+    public void testSetFilterDeliversDifference() {
+        model.setFilter(new FilteredListModel.Filter() {
+            @Override
+            public boolean accept(Object element) {
+                int i = (Integer) element;
+                return i % 3 == 0 && i != 30 || i == 31 || i == 32;
+            }
+        });
+        // 30 removed, 31..32 added
+        assertEquals(2, eventCount);
+        assertConsistent();
+    }
+
+    @Test
+    public void testUnspecificSourceChange() {
+        Source s = (Source) source;
+        s.silent = true;
+        for (int i = 100; i < 130; i++) {
+            s.addElement(i);
+        }
+        s.fireUnspecificChange();
+        assertEquals(44, model.getSize());
+        assertConsistent();
+        s.silent = true;
+        s.removeRange(0, 59);
+        s.fireUnspecificChange();
+        assertEquals(24, model.getSize());
+        assertConsistent();
+    }
+
+    @Test
+    public void testParallelRefilter() {
+        for (int i = 100; i < 50000; i++) {
+            source.addElement(i);
+        }
+        model.setFilter(new ModuloFilter(7));
+        assertConsistent();
+        assertEquals(50000 / 7 + 1, model.getSize());
+    }
+
+}
@@ -0,0 +1,183 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SharedContentPoolTest {
+
+    private SharedContentPool<String, String> pool;
+    // loads submitted to the executor, run explicitly by the tests
+    private List<Runnable> queued;
+    private Executor executor;
+    private int loaderCalls;
+
+    @Before
+    public void setUp() {
+        pool = new SharedContentPool<String, String>();
+        queued = new ArrayList<Runnable>();
+        executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        };
+        loaderCalls = 0;
+    }
+
+    private Callable<String> loader(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                loaderCalls++;
+                return value;
+            }
+        };
+    }
+
+    private void runQueued() {
+        List<Runnable> toRun = new ArrayList<Runnable>(queued);
+        queued.clear();
+        for (Runnable r : toRun) {
+            r.run();
+        }
+    }
+
+    @Test
+    public void testSharing() throws Exception {
+        SharedContentPool.Reference<String> r1 = pool.acquire("a", loader("A"), executor);
+        SharedContentPool.Reference<String> r2 = pool.acquire("a", loader("other"), executor);
+        assertEquals(1, queued.size());
+        assertEquals(1, pool.getLoadCount());
+        assertEquals(1, pool.getSharedCount());
+        assertEquals(2, pool.getReferenceCount("a"));
+        assertFalse(r1.isDone());
+        assertNull(r1.getIfDone());
+        assertNull(pool.getIfLoaded("a"));
+
+        runQueued();
+        assertEquals(1, loaderCalls);
+        assertTrue(r1.isDone());
+        assertTrue(r2.isDone());
+        assertEquals("A", r1.getIfDone());
+        assertEquals("A", r2.get());
+        assertEquals("A", pool.getIfLoaded("a"));
+
+        // acquiring loaded content shares it, too
+        SharedContentPool.Reference<String> r3 = pool.acquire("a", loader("other"), executor);
+        assertEquals(0, queued.size());
+        assertEquals("A", r3.getIfDone());
+        assertEquals(2, pool.getSharedCount());
+        assertEquals(3, pool.getReferenceCount("a"));
+
+        pool.acquire("b", loader("B"), executor);
+        assertEquals(1, queued.size());
+        assertEquals(2, pool.getLoadCount());
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testReferenceCounting() {
+        SharedContentPool.Reference<String> r1 = pool.acquire("a", loader("A"), executor);
+        SharedContentPool.Reference<String> r2 = pool.acquire("a", loader("A"), executor);
+        runQueued();
+        r1.release();
+        assertEquals(1, pool.getReferenceCount("a"));
+        assertEquals("A", pool.getIfLoaded("a"));
+        // releasing twice doesn't count twice
+        r1.release();
+        assertEquals(1, pool.getReferenceCount("a"));
+        assertEquals(1, pool.size());
+
+        r2.release();
+        assertEquals(0, pool.getReferenceCount("a"));
+        assertEquals(0, pool.size());
+        assertNull(pool.getIfLoaded("a"));
+
+        // the next acquisition loads again
+        SharedContentPool.Reference<String> r3 = pool.acquire("a", loader("A2"), executor);
+        assertEquals(1, queued.size());
+        runQueued();
+        assertEquals("A2", r3.getIfDone());
+        assertEquals(2, loaderCalls);
+    }
+
+    @Test
+    public void testCancelOnLastRelease() {
+        SharedContentPool.Reference<String> r1 = pool.acquire("a", loader("A"), executor);
+        SharedContentPool.Reference<String> r2 = pool.acquire("a", loader("A"), executor);
+        final int[] callbacks = new int[1];
+        Runnable callback = new Runnable() {
+            @Override
+            public void run() {
+                callbacks[0]++;
+            }
+        };
+        r1.whenDone(callback);
+        r2.whenDone(callback);
+
+        r1.release();
+        r2.release();
+        assertEquals(0, pool.size());
+        // the load hadn't started yet, so it never runs
+        runQueued();
+        assertEquals(0, loaderCalls);
+        assertTrue(r1.isDone());
+        assertNull(r1.getIfDone());
+        // callbacks of released references aren't run
+        assertEquals(0, callbacks[0]);
+    }
+
+    @Test
+    public void testNotCancelledWhileReferenced() {
+        SharedContentPool.Reference<String> r1 = pool.acquire("a", loader("A"), executor);
+        SharedContentPool.Reference<String> r2 = pool.acquire("a", loader("A"), executor);
+        final List<String> delivered = new ArrayList<String>();
+        r2.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                delivered.add("r2");
+            }
+        });
+        r1.release();
+        runQueued();
+        assertEquals(1, loaderCalls);
+        assertEquals("A", r2.getIfDone());
+        assertEquals(1, delivered.size());
+
+        // run immediately once done
+        r2.whenDone(new Runnable() {
+            @Override
+            public void run() {
+                delivered.add("again");
+            }
+        });
+        assertEquals(2, delivered.size());
+    }
+
+    @Test
+    public void testFailedLoad() throws Exception {
+        SharedContentPool.Reference<String> r = pool.acquire("a", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException("broken");
+            }
+        }, executor);
+        runQueued();
+        assertTrue(r.isDone());
+        assertNull(r.getIfDone());
+        try {
+            r.get();
+            fail("no exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+}
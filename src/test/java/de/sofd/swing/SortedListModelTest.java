@@ -0,0 +1,229 @@
+package de.sofd.swing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.AbstractListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SortedListModelTest {
+
+    /**
+     * source model that can change and remove ranges of elements with one
+     * event
+     */
+    private static class Source extends AbstractListModel {
+        final List<Object> elements = new ArrayList<Object>();
+
+        @Override
+        public int getSize() {
+            return elements.size();
+        }
+
+        @Override
+        public Object getElementAt(int index) {
+            return elements.get(index);
+        }
+
+        void add(int index, Object element) {
+            elements.add(index, element);
+            fireIntervalAdded(this, index, index);
+        }
+
+        void set(int index0, Object... newElements) {
+            for (int i = 0; i < newElements.length; i++) {
+                elements.set(index0 + i, newElements[i]);
+            }
+            fireContentsChanged(this, index0, index0 + newElements.length - 1);
+        }
+
+        void removeRange(int index0, int index1) {
+            elements.subList(index0, index1 + 1).clear();
+            fireIntervalRemoved(this, index0, index1);
+        }
+    }
+
+    private Source source;
+    private SortedListModel model;
+
+    /**
+     * copy of the model contents that's maintained purely from the events
+     */
+    private List<Object> mirror;
+
+    private int eventCount;
+
+    @Before
+    public void setUp() {
+        source = new Source();
+        for (int i = 1; i <= 7; i++) {
+            source.add(source.getSize(), (double) i);
+        }
+        model = new SortedListModel(source, null);
+        mirror = new ArrayList<Object>();
+        for (int i = 0; i < model.getSize(); i++) {
+            mirror.add(model.getElementAt(i));
+        }
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                eventCount++;
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.add(i, model.getElementAt(i));
+                }
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                eventCount++;
+                mirror.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+                assertEquals(model.getSize(), mirror.size());
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                eventCount++;
+                assertEquals(model.getSize(), mirror.size());
+                for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                    mirror.set(i, model.getElementAt(i));
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertConsistent() {
+        List<Object> expected = new ArrayList<Object>(source.elements);
+        Collections.sort((List) expected);
+        assertEquals(expected, mirror);
+        for (int i = 0; i < model.getSize(); i++) {
+            assertSame(model.getElementAt(i), source.getElementAt(model.convertViewIndexToSource(i)));
+            assertEquals(i, model.convertSourceIndexToView(model.convertViewIndexToSource(i)));
+        }
+    }
+
+    @Test
+    public void testInitialContents() {
+        assertEquals(7, model.getSize());
+        assertConsistent();
+    }
+
+    @Test
+    public void testAdd() {
+        source.add(2, 4.5);
+        source.add(0, 0.5);
+        assertEquals(2, eventCount);
+        assertConsistent();
+    }
+
+    @Test
+    public void testChangeSeveralElements() {
+        // [1,2,3,4,5,6,7] -> [6.5,2,3,4,100,6,7] in one event
+        source.set(0, 6.5, 2.0, 3.0, 4.0, 100.0);
+        assertConsistent();
+    }
+
+    @Test
+    public void testRemoveScatteredElements() {
+        model.setComparator(new Comparator<Double>() {
+            @Override
+            public int compare(Double o1, Double o2) {
+                // odd numbers first
+                int c = Boolean.compare(o1 % 2 == 0, o2 % 2 == 0);
+                return c != 0 ? c : o1.compareTo(o2);
+            }
+        });
+        eventCount = 0;
+        model.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                // removed elements whose removal is still to be announced
+                // read as themselves (this listener runs before the one
+                // maintaining the mirror)
+                List<Object> expected = new ArrayList<Object>(mirror);
+                expected.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+                assertEquals(expected.size(), model.getSize());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertSame(expected.get(i), model.getElementAt(i));
+                }
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+            }
+        });
+        // removes 2, 3, 4, which aren't contiguous in the view
+        source.removeRange(1, 3);
+        assertEquals(2, eventCount);
+        assertEquals(4, model.getSize());
+        assertEquals(4, mirror.size());
+        assertEquals(1.0, mirror.get(0));
+        assertEquals(6.0, mirror.get(3));
+    }
+
+    @Test
+    public void testResortAfterSizeChange() {
+        // the model isn't notified of these, as if they'd been made before
+        // it was attached
+        source.elements.add(0.5);
+        source.elements.add(9.0);
+        model.resort();
+        assertEquals(2, eventCount);
+        assertConsistent();
+        source.elements.subList(0, 5).clear();
+        model.resort();
+        assertEquals(4, eventCount);
+        assertConsistent();
+    }
+
+    @Test
+    public void testRandomSourceChanges() {
+        Random r = new Random(11);
+        for (int round = 0; round < 2000; round++) {
+            int size = source.getSize();
+            switch (size == 0 ? 0 : r.nextInt(3)) {
+            case 0:
+                source.add(r.nextInt(size + 1), (double) r.nextInt(1000));
+                break;
+            case 1: {
+                int index0 = r.nextInt(size);
+                source.removeRange(index0, Math.min(size - 1, index0 + r.nextInt(3)));
+                break;
+            }
+            default: {
+                int index0 = r.nextInt(size);
+                Object[] newElements = new Object[Math.min(size - index0, 1 + r.nextInt(5))];
+                for (int i = 0; i < newElements.length; i++) {
+                    newElements[i] = (double) r.nextInt(1000);
+                }
+                source.set(index0, newElements);
+            }
+            }
+        }
+        assertConsistent();
+    }
+
+    @Test
+    public void testParallelResort() {
+        Random r = new Random(3);
+        for (int i = 0; i < 30000; i++) {
+            source.elements.add((double) r.nextInt(100000));
+        }
+        model.resort();
+        assertConsistent();
+    }
+
+}
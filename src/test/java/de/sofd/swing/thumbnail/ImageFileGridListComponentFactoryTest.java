@@ -0,0 +1,300 @@
+package de.sofd.swing.thumbnail;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import de.sofd.swing.CellLoadExecutors;
+import de.sofd.swing.ContentCache;
+import de.sofd.swing.JGridList;
+import de.sofd.swing.SharedContentPool;
+
+public class ImageFileGridListComponentFactoryTest {
+
+    private File imageFile;
+    private File cacheFile;
+    private ThumbnailDiskCache diskCache;
+    private ImageFileGridListComponentFactory factory;
+    private final AtomicInteger decodeCount = new AtomicInteger();
+    private final AtomicInteger byteArrayDecodeCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        imageFile = File.createTempFile("image", ".png");
+        imageFile.deleteOnExit();
+        ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "png", imageFile);
+        cacheFile = File.createTempFile("thumbnails", ".cache");
+        cacheFile.deleteOnExit();
+        diskCache = new ThumbnailDiskCache(cacheFile, 65536);
+        factory = new ImageFileGridListComponentFactory(40, 30, false) {
+            @Override
+            protected BufferedImage decodeImage(Object modelItem, int width, int height) throws IOException {
+                decodeCount.incrementAndGet();
+                if (modelItem instanceof byte[]) {
+                    byteArrayDecodeCount.incrementAndGet();
+                }
+                return super.decodeImage(modelItem, width, height);
+            }
+        };
+        factory.setProgressive(false);
+        factory.setThumbnailDiskCache(diskCache);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        factory.dispose();
+        diskCache.close();
+    }
+
+    @Test
+    public void testPregeneratedThumbnailIsNotDecoded() throws Exception {
+        // distinguishable from what decoding the file would yield (40x20)
+        BufferedImage stored = new BufferedImage(7, 5, BufferedImage.TYPE_INT_ARGB);
+        stored.setRGB(3, 2, 0xffff0000);
+        diskCache.put(ThumbnailDiskCache.getThumbnailId(imageFile, 40, 30),
+                      ThumbnailDiskCache.getContentHash(imageFile), stored);
+        Image image = displayAndWait();
+        assertEquals(0, decodeCount.get());
+        assertEquals(7, image.getWidth(null));
+        assertEquals(5, image.getHeight(null));
+        assertEquals(0xffff0000, ((BufferedImage) image).getRGB(3, 2));
+    }
+
+    @Test
+    public void testDecodedThumbnailIsStored() throws Exception {
+        Image image = displayAndWait();
+        assertEquals(1, decodeCount.get());
+        assertEquals(40, image.getWidth(null));
+        assertEquals(20, image.getHeight(null));
+        String id = ThumbnailDiskCache.getThumbnailId(imageFile, 40, 30);
+        long hash = ThumbnailDiskCache.getContentHash(imageFile);
+        assertEquals(40, diskCache.getWidth(id, hash));
+        assertEquals(20, diskCache.getHeight(id, hash));
+        // not used for a changed file
+        assertFalse(diskCache.contains(id, hash + 1));
+    }
+
+    @Test
+    public void testNoLookupWhenCropping() throws Exception {
+        factory.dispose();
+        factory = new ImageFileGridListComponentFactory(40, 30, true) {
+            @Override
+            protected BufferedImage decodeImage(Object modelItem, int width, int height) throws IOException {
+                decodeCount.incrementAndGet();
+                return super.decodeImage(modelItem, width, height);
+            }
+        };
+        factory.setProgressive(false);
+        factory.setThumbnailDiskCache(diskCache);
+        diskCache.put(ThumbnailDiskCache.getThumbnailId(imageFile, 40, 30),
+                      ThumbnailDiskCache.getContentHash(imageFile), new BufferedImage(7, 5, BufferedImage.TYPE_INT_ARGB));
+        Image image = displayAndWait();
+        assertEquals(1, decodeCount.get());
+        assertEquals(40, image.getWidth(null));
+        assertEquals(30, image.getHeight(null));
+    }
+
+    @Test
+    public void testReadOnIoExecutor() throws Exception {
+        ExecutorService ioExecutor = CellLoadExecutors.newIoExecutor("test");
+        try {
+            factory.setIoExecutor(ioExecutor);
+            factory.setMaxInFlightReads(1);
+            factory.setSharedContentPool(new SharedContentPool<Object, Image>());
+            ImageFileGridListComponentFactory.ImageCell cell1 = createCell();
+            ImageFileGridListComponentFactory.ImageCell cell2 = createCell();
+            Image image = waitForImage(cell1);
+            assertSame(image, waitForImage(cell2));
+            assertEquals(40, image.getWidth(null));
+            // read once on the I/O executor, decoded once for both cells
+            assertEquals(1, decodeCount.get());
+            assertEquals(1, byteArrayDecodeCount.get());
+        } finally {
+            ioExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRasterStore() throws Exception {
+        OffHeapRasterStore<Object> store = new OffHeapRasterStore<Object>(1024 * 1024, 4);
+        factory.setRasterStore(store);
+        ImageFileGridListComponentFactory.ImageCell cell1 = createCell();
+        final Image decoded = waitForImage(cell1);
+        assertEquals(1, decodeCount.get());
+        assertEquals(1, store.size());
+        // displayed from the store, without decoding again
+        final JPanel parent = new JPanel();
+        final Image stored = waitForImage(createCell(parent, imageFile));
+        assertEquals(1, decodeCount.get());
+        assertNotSame(decoded, stored);
+        assertEquals(40, stored.getWidth(null));
+        assertEquals(20, stored.getHeight(null));
+        // the copy is returned to the store's pool when the cell is recycled
+        createCell(parent, null);
+        assertSame(stored, waitForImage(createCell()));
+        store.clear();
+        assertEquals(0, store.getAllocatedBytes());
+    }
+
+    @Test
+    public void testRejectedDecodeCompletesSharedLoad() throws Exception {
+        ExecutorService ioExecutor = CellLoadExecutors.newIoExecutor("test");
+        ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+        decodeExecutor.shutdown();
+        try {
+            factory.dispose();
+            factory = new ImageFileGridListComponentFactory(40, 30, false, decodeExecutor);
+            factory.setIoExecutor(ioExecutor);
+            factory.setSharedContentPool(new SharedContentPool<Object, Image>());
+            waitForFailure(createCell());
+        } finally {
+            ioExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedReadGivesUpWhenReleased() throws Exception {
+        final AtomicInteger readCount = new AtomicInteger();
+        ExecutorService ioExecutor = CellLoadExecutors.newIoExecutor("test");
+        ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+        final CountDownLatch decoderReleased = new CountDownLatch(1);
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decoderReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        File otherFile = File.createTempFile("image", ".png");
+        otherFile.deleteOnExit();
+        ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "png", otherFile);
+        try {
+            factory.dispose();
+            factory = new ImageFileGridListComponentFactory(40, 30, false, decodeExecutor) {
+                @Override
+                protected Object readSource(Object modelItem) throws IOException {
+                    readCount.incrementAndGet();
+                    return super.readSource(modelItem);
+                }
+            };
+            factory.setProgressive(false);
+            factory.setIoExecutor(ioExecutor);
+            factory.setMaxInFlightReads(1);
+            factory.setSharedContentPool(new SharedContentPool<Object, Image>());
+            ImageFileGridListComponentFactory.ImageCell cell1 = createCell();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (readCount.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // waits for the permit held by the first read, which waits for
+            // the blocked decoder thread
+            JPanel parent = new JPanel();
+            createCell(parent, otherFile);
+            Thread.sleep(100);
+            assertEquals(1, readCount.get());
+            // recycling the cell releases the last reference
+            createCell(parent, null);
+            Thread.sleep(100);
+            decoderReleased.countDown();
+            waitForImage(cell1);
+            Thread.sleep(200);
+            assertEquals(1, readCount.get());
+        } finally {
+            decoderReleased.countDown();
+            ioExecutor.shutdown();
+            decodeExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNullDecodeFails() throws Exception {
+        factory.dispose();
+        factory = new ImageFileGridListComponentFactory(40, 30, false) {
+            @Override
+            protected BufferedImage decodeImage(Object modelItem, int width, int height) throws IOException {
+                return null;
+            }
+        };
+        factory.setProgressive(false);
+        waitForFailure(createCell());
+        // nothing is written to or cached by a shared load either
+        ContentCache<Object, Image> cache = new ContentCache<Object, Image>(1 << 20, ContentCache.IMAGE_SIZE_ESTIMATOR);
+        factory.setContentCache(cache);
+        factory.setThumbnailDiskCache(diskCache);
+        factory.setSharedContentPool(new SharedContentPool<Object, Image>());
+        waitForFailure(createCell());
+        assertEquals(0, cache.size());
+        assertFalse(diskCache.contains(ThumbnailDiskCache.getThumbnailId(imageFile, 40, 30),
+                                       ThumbnailDiskCache.getContentHash(imageFile)));
+    }
+
+    private void waitForFailure(final ImageFileGridListComponentFactory.ImageCell cell) throws Exception {
+        final boolean[] failed = new boolean[1];
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!failed[0] && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    failed[0] = cell.isFailed();
+                }
+            });
+        }
+        assertTrue("load not failed", failed[0]);
+    }
+
+    private Image displayAndWait() throws Exception {
+        return waitForImage(createCell());
+    }
+
+    private ImageFileGridListComponentFactory.ImageCell createCell() throws Exception {
+        return createCell(new JPanel(), imageFile);
+    }
+
+    private ImageFileGridListComponentFactory.ImageCell createCell(final JPanel parent, final Object modelItem) throws Exception {
+        final ImageFileGridListComponentFactory.ImageCell[] cell = new ImageFileGridListComponentFactory.ImageCell[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                cell[0] = (ImageFileGridListComponentFactory.ImageCell)
+                        factory.createComponent(new JGridList(), parent, modelItem, new Dimension(40, 30), 1.0);
+            }
+        });
+        return cell[0];
+    }
+
+    private Image waitForImage(final ImageFileGridListComponentFactory.ImageCell cell) throws Exception {
+        final Image[] image = new Image[1];
+        long deadline = System.currentTimeMillis() + 10000;
+        while (image[0] == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    image[0] = cell.getImage();
+                }
+            });
+        }
+        assertNotNull("image not delivered", image[0]);
+        return image[0];
+    }
+
+}